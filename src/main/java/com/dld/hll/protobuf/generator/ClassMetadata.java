@@ -0,0 +1,228 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.mapper.TypeMapperRegistry;
+import com.dld.hll.protobuf.generator.scanner.ClassFileHeader;
+import com.dld.hll.protobuf.generator.util.ProtoUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 解析时需要的类反射信息，每个类只计算一次
+ * 通过 ClassValue 与类绑定，同一JVM中多次生成（如监听模式）共用；类加载器被回收时随类一起回收
+ * 类型映射与每次生成的配置有关，不在此缓存，由 {@link TypeMapperRegistry} 缓存
+ * 反射返回的成员顺序没有保证（方法顺序在不同JVM及不同运行间可能变化），需要稳定顺序时使用按声明顺序排列的成员
+ *
+ * @author Chen Hui
+ */
+@Getter
+public final class ClassMetadata {
+
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private final Class<?> clazz;
+
+    /**
+     * 是否为 Collection 或 Map 类型
+     */
+    private final boolean isGeneric;
+
+    /**
+     * 父类，没有或为 Object 时为 null
+     */
+    private final Class<?> superclass;
+
+    private final List<Method> declaredMethods;
+
+    /**
+     * 声明的字段（对象类型使用）
+     */
+    private final List<FieldMetadata> declaredFields;
+
+    /**
+     * 全部公共字段（枚举类型使用）及其按声明顺序排列的结果，第一次使用时获取
+     * Class#getFields 沿父类链递归，继承层次很深的对象类型不获取
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile List<Field> publicFields;
+    @Getter(AccessLevel.NONE)
+    private volatile List<Field> orderedPublicFields;
+
+    /**
+     * 按类文件中的声明顺序排列的成员，第一次使用时读取类文件
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile DeclarationOrder declarationOrder;
+
+
+    private ClassMetadata(Class<?> clazz) {
+        this.clazz = clazz;
+        this.isGeneric = !ProtoUtils.isNotGeneric(clazz);
+        Class<?> superclass = clazz.getSuperclass();
+        this.superclass = superclass != Object.class ? superclass : null;
+        this.declaredMethods = Collections.unmodifiableList(Arrays.asList(clazz.getDeclaredMethods()));
+
+        Field[] fields = clazz.getDeclaredFields();
+        List<FieldMetadata> declaredFields = new ArrayList<>(fields.length);
+        for (Field field : fields) {
+            declaredFields.add(new FieldMetadata(field));
+        }
+        this.declaredFields = Collections.unmodifiableList(declaredFields);
+    }
+
+    public static ClassMetadata of(Class<?> clazz) {
+        return METADATA.get(clazz);
+    }
+
+    /**
+     * @param isDeclarationOrder 是否按类文件中的声明顺序排列，否则为反射返回的顺序
+     */
+    public List<Method> getDeclaredMethods(boolean isDeclarationOrder) {
+        return isDeclarationOrder ? getDeclarationOrder().declaredMethods : declaredMethods;
+    }
+
+    public List<FieldMetadata> getDeclaredFields(boolean isDeclarationOrder) {
+        return isDeclarationOrder ? getDeclarationOrder().declaredFields : declaredFields;
+    }
+
+    public List<Field> getPublicFields(boolean isDeclarationOrder) {
+        List<Field> fields = publicFields;
+        if (fields == null) {
+            fields = Collections.unmodifiableList(Arrays.asList(clazz.getFields()));
+            publicFields = fields;
+        }
+        if (!isDeclarationOrder) {
+            return fields;
+        }
+
+        List<Field> orderedFields = orderedPublicFields;
+        if (orderedFields == null) {
+            orderedFields = DeclarationOrder.sort(fields, Field::getName, getDeclarationOrder().fieldNames);
+            orderedPublicFields = orderedFields;
+        }
+        return orderedFields;
+    }
+
+    private DeclarationOrder getDeclarationOrder() {
+        DeclarationOrder order = declarationOrder;
+        if (order == null) {
+            order = new DeclarationOrder(this);
+            declarationOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * 方法签名（方法名 + 描述符），与类文件中的方法签名一致
+     */
+    private static String getSignature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            signature.append(getDescriptor(parameterType));
+        }
+        return signature.append(')').append(getDescriptor(method.getReturnType())).toString();
+    }
+
+    private static String getDescriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        }
+        if (!type.isPrimitive()) {
+            return "L" + type.getName().replace('.', '/') + ";";
+        }
+        if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == float.class) {
+            return "F";
+        } else if (type == double.class) {
+            return "D";
+        }
+        return "V";
+    }
+
+    /**
+     * 按类文件中的声明顺序排列的成员
+     * 类文件中不存在的成员（如继承的公共字段）排在最后并按名称排序；无法读取类文件时全部按名称排序
+     */
+    private static final class DeclarationOrder {
+
+        private final List<Method> declaredMethods;
+        private final List<FieldMetadata> declaredFields;
+
+        /**
+         * 类文件中的字段名，公共字段使用时再排序
+         */
+        private final List<String> fieldNames;
+
+        private DeclarationOrder(ClassMetadata metadata) {
+            ClassFileHeader classFile = readClassFile(metadata.clazz);
+            this.fieldNames = classFile != null ? classFile.getFieldNames() : Collections.emptyList();
+            List<String> methodSignatures = classFile != null ? classFile.getMethodSignatures() :
+                    Collections.emptyList();
+            this.declaredMethods = sort(metadata.declaredMethods, ClassMetadata::getSignature, methodSignatures);
+            this.declaredFields = sort(metadata.declaredFields, fm -> fm.getField().getName(), fieldNames);
+        }
+
+        private static ClassFileHeader readClassFile(Class<?> clazz) {
+            String resourceName = "/" + clazz.getName().replace('.', '/') + ".class";
+            try (InputStream inputStream = clazz.getResourceAsStream(resourceName)) {
+                return inputStream != null ? ClassFileHeader.read(new BufferedInputStream(inputStream), true) : null;
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read class file of [" + clazz.getName() + "]", e);
+            }
+        }
+
+        private static <T> List<T> sort(List<T> members, Function<T, String> keyFunction, List<String> declaredKeys) {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < declaredKeys.size(); i++) {
+                indexes.putIfAbsent(declaredKeys.get(i), i);
+            }
+            List<T> sorted = new ArrayList<>(members);
+            sorted.sort(Comparator.comparing((T member) ->
+                    indexes.getOrDefault(keyFunction.apply(member), Integer.MAX_VALUE)).thenComparing(keyFunction));
+            return Collections.unmodifiableList(sorted);
+        }
+    }
+
+    /**
+     * 字段的反射信息
+     */
+    @Getter
+    public static final class FieldMetadata {
+
+        private final Field field;
+        private final Class<?> type;
+        private final Type genericType;
+        private final boolean isGeneric;
+
+        private FieldMetadata(Field field) {
+            this.field = field;
+            this.type = field.getType();
+            this.genericType = field.getGenericType();
+            this.isGeneric = !ProtoUtils.isNotGeneric(type);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.GenericTypeKey;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 泛型封装消息的名称表，每个泛型类型（规范键）的名称只计算一次，同一泛型类型总是返回同一个名称实例
+ * 名称由原始类型和参数类型的类名拼接（如 Map<String, List<Integer>> 为 MapStringListInteger），
+ * 不同泛型类型得到相同名称时（如不同包中的同名类）生成的消息会重复，直接抛出异常
+ *
+ * @author Chen Hui
+ */
+public class GenericNameTable {
+
+    private Map<GenericTypeKey, String> typeNames = new ConcurrentHashMap<>();
+    private Map<String, GenericTypeKey> nameKeys = new ConcurrentHashMap<>();
+
+
+    /**
+     * 获取泛型类型的消息名称，内嵌泛型由内向外依次计算并放入名称表
+     */
+    public String getTypeName(GenericTypeKey key) {
+        String typeName = typeNames.get(key);
+        if (typeName != null) {
+            return typeName;
+        }
+
+        Deque<GenericTypeKey> keys = new ArrayDeque<>();
+        for (GenericTypeKey k = key; k != null && !typeNames.containsKey(k); k = k.getNestedKey()) {
+            keys.push(k);
+        }
+        while (!keys.isEmpty()) {
+            GenericTypeKey k = keys.pop();
+            GenericTypeKey nestedKey = k.getNestedKey();
+            register(k, buildTypeName(k, nestedKey == null ? null : typeNames.get(nestedKey)));
+        }
+        return typeNames.get(key);
+    }
+
+    private void register(GenericTypeKey key, String typeName) {
+        GenericTypeKey existing = nameKeys.putIfAbsent(typeName, key);
+        if (existing != null && existing != key) {
+            throw new RuntimeException("Generic message name [" + typeName + "] of type [" +
+                    key.getType().getTypeName() + "] conflicts with type [" + existing.getType().getTypeName() + "].");
+        }
+        typeNames.putIfAbsent(key, typeName);
+    }
+
+    private static String buildTypeName(GenericTypeKey key, String nestedTypeName) {
+        List<String> classNames = new ArrayList<>();
+        for (Object argument : key.getArguments()) {
+            if (argument instanceof Class) {
+                classNames.add(((Class<?>) argument).getSimpleName());
+            }
+        }
+        return buildTypeName(key.getRawType().getSimpleName(), classNames, key.getArguments().length, nestedTypeName);
+    }
+
+    /**
+     * 不存在内嵌泛型时拼接全部的参数类型；存在时 List 拼接内嵌泛型名，Map 拼接 Key 类型及内嵌泛型名
+     * 反射解析及源码元素（注解处理器）解析共用同一规则
+     *
+     * @param rawName        原始类型的类名
+     * @param classNames     非泛型参数的类名（按参数顺序）
+     * @param length         泛型参数个数
+     * @param nestedTypeName 内嵌泛型的名称，没有时为 null
+     */
+    public static String buildTypeName(String rawName, List<String> classNames, int length, String nestedTypeName) {
+        StringBuilder typeName = new StringBuilder(rawName);
+        if (nestedTypeName == null) {
+            classNames.forEach(typeName::append);
+        } else if (length == 1) {
+            typeName.append(nestedTypeName);
+        } else if (!classNames.isEmpty()) {
+            typeName.append(classNames.get(0)).append(nestedTypeName);
+        } else {
+            throw new RuntimeException("Key of generic type must not be generic.");
+        }
+        return typeName.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.GenericTypeKey;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 泛型类型的规范键表，相同结构的泛型类型得到同一个 {@link GenericTypeKey}
+ * 内嵌泛型先得到键，查找时只比较原始类型及各参数（Class 或已规范化的键）的实例，不依赖 ParameterizedType 的实现
+ * 得到的键可以作为按实例比较的 Map 键使用
+ *
+ * @author Chen Hui
+ */
+public class GenericTypeKeyTable {
+
+    private Map<Shape, GenericTypeKey> keys = new ConcurrentHashMap<>();
+
+
+    /**
+     * 获取泛型类型的规范键，参数只能为 Class 或 ParameterizedType（解析前已校验）
+     */
+    public GenericTypeKey getKey(ParameterizedType type) {
+        Map<Type, GenericTypeKey> resolved = new IdentityHashMap<>();
+        Deque<ParameterizedType> pending = new ArrayDeque<>();
+        pending.push(type);
+        while (!pending.isEmpty()) {
+            ParameterizedType current = pending.peek();
+            Type[] paramTypes = current.getActualTypeArguments();
+            Object[] arguments = new Object[paramTypes.length];
+            boolean isResolved = true;
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (paramTypes[i] instanceof Class) {
+                    arguments[i] = paramTypes[i];
+                } else {
+                    arguments[i] = resolved.get(paramTypes[i]);
+                    if (arguments[i] == null) {
+                        pending.push((ParameterizedType) paramTypes[i]);
+                        isResolved = false;
+                    }
+                }
+            }
+            if (isResolved) {
+                pending.pop();
+                resolved.put(current, intern((Class<?>) current.getRawType(), arguments, current));
+            }
+        }
+        return resolved.get(type);
+    }
+
+    private GenericTypeKey intern(Class<?> rawType, Object[] arguments, ParameterizedType type) {
+        return keys.computeIfAbsent(new Shape(rawType, arguments),
+                shape -> new GenericTypeKey(rawType, arguments, type));
+    }
+
+    /**
+     * 查找用的泛型结构，Class 和 GenericTypeKey 都按实例比较
+     */
+    private static final class Shape {
+
+        private final Class<?> rawType;
+        private final Object[] arguments;
+        private final int hash;
+
+        private Shape(Class<?> rawType, Object[] arguments) {
+            this.rawType = rawType;
+            this.arguments = arguments;
+            this.hash = 31 * rawType.hashCode() + Arrays.hashCode(arguments);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) obj;
+            if (rawType != other.rawType || arguments.length != other.arguments.length) {
+                return false;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] != other.arguments[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
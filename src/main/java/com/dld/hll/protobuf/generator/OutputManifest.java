@@ -0,0 +1,142 @@
+package com.dld.hll.protobuf.generator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 生成目录中的输出清单，记录由生成器写入的proto文件及其内容摘要、文件大小和修改时间
+ * 增量生成时只删除清单中记录、本次不再生成的文件，不影响目录中的其他文件
+ * 文件大小和修改时间与记录一致时认为文件未被修改，直接使用记录的摘要，不再读取文件计算
+ *
+ * @author Chen Hui
+ */
+public class OutputManifest {
+
+    public static final String MANIFEST_FILE_NAME = ".protobuf-generator.manifest";
+
+    /**
+     * 记录的格式：摘要,文件大小,修改时间（毫秒）
+     */
+    private static final String ENTRY_SEPARATOR = ",";
+
+    private final Path manifestFile;
+    private final Properties properties = new Properties();
+    private boolean isChanged;
+
+
+    private OutputManifest(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * 加载生成目录中的清单，不存在时为空清单
+     */
+    public static OutputManifest load(Path generatePath) {
+        OutputManifest manifest = new OutputManifest(generatePath.resolve(MANIFEST_FILE_NAME));
+        if (Files.exists(manifest.manifestFile)) {
+            try (InputStream inputStream = Files.newInputStream(manifest.manifestFile)) {
+                manifest.properties.load(inputStream);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return manifest;
+    }
+
+    public synchronized Set<String> getFileNames() {
+        return new TreeSet<>(properties.stringPropertyNames());
+    }
+
+    /**
+     * 文件在记录之后未被修改（大小及修改时间与记录一致）时返回记录的摘要
+     *
+     * @param attributes 磁盘上文件的当前属性
+     * @return 没有记录、记录中没有大小及修改时间（旧版本清单）或文件已变化时返回 null
+     */
+    public synchronized String getHash(String fileName, BasicFileAttributes attributes) {
+        String entry = properties.getProperty(fileName);
+        if (entry == null) {
+            return null;
+        }
+        String[] values = entry.split(ENTRY_SEPARATOR);
+        if (values.length != 3 || !values[1].equals(Long.toString(attributes.size())) ||
+                !values[2].equals(Long.toString(attributes.lastModifiedTime().toMillis()))) {
+            return null;
+        }
+        return values[0];
+    }
+
+    /**
+     * @param attributes 写入（或确认未变化）后磁盘上文件的属性
+     */
+    public synchronized void put(String fileName, String hash, BasicFileAttributes attributes) {
+        String entry = hash + ENTRY_SEPARATOR + attributes.size() + ENTRY_SEPARATOR +
+                attributes.lastModifiedTime().toMillis();
+        if (!entry.equals(properties.setProperty(fileName, entry))) {
+            isChanged = true;
+        }
+    }
+
+    public synchronized void remove(String fileName) {
+        if (properties.remove(fileName) != null) {
+            isChanged = true;
+        }
+    }
+
+    /**
+     * 有变化时写入清单文件（先写临时文件再替换）
+     */
+    public synchronized void save() {
+        if (!isChanged) {
+            return;
+        }
+
+        try {
+            Path tempFile = getTempFile(manifestFile);
+            try {
+                try (OutputStream outputStream = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    properties.store(outputStream, "protobuf-generator output manifest");
+                }
+                moveAtomically(tempFile, manifestFile);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            isChanged = false;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 目标文件同目录下的隐藏临时文件，每次调用名称不同（需以 CREATE_NEW 创建），
+     * 同时向同一目录生成的多个执行器（或进程）不会写入同一个临时文件
+     */
+    static Path getTempFile(Path target) {
+        String fileName = target.getFileName().toString();
+        return target.resolveSibling((fileName.startsWith(".") ? "" : ".") + fileName + "." + UUID.randomUUID() +
+                ".tmp");
+    }
+
+    /**
+     * 原子替换目标文件，文件系统不支持时退化为普通替换
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.*;
+
+import java.util.*;
+
+/**
+ * 全部服务解析完成后，计算对象和泛型的引用次数及所属服务，并构建 {@link ProtoTypeTable}
+ * 引用次数大于 1 的生成在Common文件中，等于 1 的生成在所属服务文件中
+ *
+ * 分两步，均与类型图大小成线性关系：
+ * 1. 按服务顺序重放深度优先的解析过程（每个类型只展开一次），得到各服务中首次解析的类型，
+ * 以及每次引用其他服务中已解析类型时产生的一次"引用事件"（该类型及其可达的全部类型引用次数加一）
+ * 2. 按事件顺序在类型图上传播，每个类型最多记录两个不同的事件，即可区分引用次数为 1 和大于 1
+ * 类型编号默认为首次引用的顺序，按拓扑顺序时为重放中解析完成的顺序（被引用的类型在前）
+ *
+ * @author Chen Hui
+ */
+public class ProtoCitationAnalyzer {
+
+    private static final int NONE = -1;
+
+    /**
+     * 类型图节点（ProtoObject 或 ProtoGenericField）及其编号
+     */
+    private List<Object> nodes = new ArrayList<>();
+    private Map<Object, Integer> nodeIds = new IdentityHashMap<>();
+
+    /**
+     * 以内嵌泛型首次解析的泛型节点（初始引用次数为 1）
+     */
+    private BitSet nestedGenerics = new BitSet();
+
+    /**
+     * 最外层泛型在当前服务中再次以内嵌泛型出现时（原引用次数为 0）设为 1，记录首次发生时已产生的事件数
+     */
+    private int[] firstNestedAt = new int[64];
+
+    /**
+     * 引用事件的起始节点，按发生顺序
+     */
+    private int[] events = new int[64];
+    private int eventCount;
+
+    /**
+     * 正在重放的节点，及每个服务中首次解析的节点
+     */
+    private BitSet parsing = new BitSet();
+    private List<BitSet> members = new ArrayList<>();
+    private BitSet currentMembers;
+
+    /**
+     * 是否按拓扑顺序编号，及重放中节点解析完成的顺序
+     */
+    private final boolean isTopological;
+    private int[] completed = new int[64];
+    private int completedCount;
+
+
+    public ProtoCitationAnalyzer() {
+        this(false);
+    }
+
+    public ProtoCitationAnalyzer(boolean isTopological) {
+        this.isTopological = isTopological;
+    }
+
+    public ProtoTypeTable analyze(List<ProtoService> protoServices) {
+        for (ProtoService protoService : protoServices) {
+            currentMembers = new BitSet();
+            members.add(currentMembers);
+            for (ProtoMethod protoMethod : protoService.getProtoMethods()) {
+                if (protoMethod.getParameterProtoObject() != null) {
+                    replay(protoMethod.getParameterProtoObject());
+                }
+                if (protoMethod.getReturnProtoObject() != null) {
+                    replay(protoMethod.getReturnProtoObject());
+                }
+            }
+        }
+        assignCitations();
+        if (isTopological) {
+            renumberByCompletion();
+        }
+        return ProtoTypeTable.build(protoServices, nodes, nodeIds, members);
+    }
+
+    /**
+     * 以显式栈按解析顺序（深度优先、子节点全部完成后才算解析完成）重放，不受调用栈深度限制
+     */
+    private void replay(ProtoObject protoObject) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        enterObject(protoObject, frames);
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (frame.node instanceof ProtoObject) {
+                if (!nextObjectChild(frame, frames)) {
+                    frames.pop();
+                    complete(frame.id);
+                    currentMembers.set(frame.id);
+                }
+            } else if (!nextGenericChild(frame, frames)) {
+                frames.pop();
+                complete(frame.id);
+                if (!frame.isOutermost) {
+                    currentMembers.set(frame.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 进入对象的下一个子节点：先父类，再按顺序为各字段的对象或泛型
+     *
+     * @return 没有未访问的子节点时返回 false
+     */
+    private boolean nextObjectChild(Frame frame, Deque<Frame> frames) {
+        ProtoObject protoObject = (ProtoObject) frame.node;
+        if (frame.cursor == 0) {
+            frame.cursor++;
+            if (protoObject.getSuperProtoObject() != null) {
+                enterObject(protoObject.getSuperProtoObject(), frames);
+                return true;
+            }
+        }
+        List<ProtoField> protoFields = protoObject.getProtoFields();
+        while (frame.cursor <= protoFields.size()) {
+            ProtoField protoField = protoFields.get(frame.cursor++ - 1);
+            if (protoField.getProtoObject() != null) {
+                enterObject(protoField.getProtoObject(), frames);
+                return true;
+            } else if (protoField.getGeneric() != null) {
+                enterGeneric(protoField.getGeneric(), true, frames);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 进入泛型的下一个子节点，与解析时的参数顺序一致
+     */
+    private boolean nextGenericChild(Frame frame, Deque<Frame> frames) {
+        ProtoGenericField genericField = (ProtoGenericField) frame.node;
+        while (frame.cursor < genericField.getLength()) {
+            if (!genericField.isGenericArgument(frame.cursor++)) {
+                if (genericField.getTypeMappings().get(frame.classIndex++).isObjectOrEnum()) {
+                    enterObject(genericField.getProtoObjects().get(frame.objectIndex++), frames);
+                    return true;
+                }
+            } else {
+                enterGeneric(genericField.getNestedGeneric(), false, frames);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void enterObject(ProtoObject protoObject, Deque<Frame> frames) {
+        Integer id = nodeIds.get(protoObject);
+        if (id != null) {
+            if (!isExistsInCurrentService(id)) {
+                addEvent(id);
+            }
+            return;
+        }
+
+        id = addNode(protoObject);
+        parsing.set(id);
+        frames.push(new Frame(protoObject, id, false));
+    }
+
+    private void enterGeneric(ProtoGenericField genericField, boolean isOutermost, Deque<Frame> frames) {
+        Integer id = nodeIds.get(genericField);
+        if (id != null) {
+            if (parsing.get(id)) {
+                markNested(id);
+            } else if (isOutermost) {
+                // 最外层泛型本身不增加引用次数，只增加其参数对象和内嵌泛型
+                if (!currentMembers.get(id)) {
+                    genericField.getProtoObjects().forEach(protoObject -> addEvent(nodeIds.get(protoObject)));
+                    if (genericField.getNestedGeneric() != null) {
+                        addEvent(nodeIds.get(genericField.getNestedGeneric()));
+                    }
+                }
+            } else {
+                currentMembers.set(id);
+                markNested(id);
+            }
+            return;
+        }
+
+        id = addNode(genericField);
+        if (!isOutermost) {
+            nestedGenerics.set(id);
+        }
+        parsing.set(id);
+        frames.push(new Frame(genericField, id, isOutermost));
+    }
+
+    private boolean isExistsInCurrentService(int id) {
+        return currentMembers.get(id) || parsing.get(id);
+    }
+
+    private int addNode(Object node) {
+        int id = nodes.size();
+        nodes.add(node);
+        nodeIds.put(node, id);
+        if (id == firstNestedAt.length) {
+            firstNestedAt = Arrays.copyOf(firstNestedAt, id * 2);
+        }
+        firstNestedAt[id] = NONE;
+        return id;
+    }
+
+    private void addEvent(int id) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        events[eventCount++] = id;
+    }
+
+    private void complete(int id) {
+        parsing.clear(id);
+        if (completedCount == completed.length) {
+            completed = Arrays.copyOf(completed, completedCount * 2);
+        }
+        completed[completedCount++] = id;
+    }
+
+    /**
+     * 引用次数计算完成后，按解析完成的顺序重新编号（每个节点都恰好完成一次）
+     */
+    private void renumberByCompletion() {
+        int[] newIds = new int[nodes.size()];
+        List<Object> renumbered = new ArrayList<>(nodes.size());
+        for (int i = 0; i < completedCount; i++) {
+            newIds[completed[i]] = i;
+            renumbered.add(nodes.get(completed[i]));
+        }
+        nodes = renumbered;
+        nodeIds.replaceAll((node, id) -> newIds[id]);
+
+        for (int service = 0; service < members.size(); service++) {
+            BitSet serviceMembers = members.get(service);
+            BitSet renumberedMembers = new BitSet(nodes.size());
+            for (int id = serviceMembers.nextSetBit(0); id >= 0; id = serviceMembers.nextSetBit(id + 1)) {
+                renumberedMembers.set(newIds[id]);
+            }
+            members.set(service, renumberedMembers);
+        }
+    }
+
+    private void markNested(int id) {
+        if (firstNestedAt[id] == NONE) {
+            firstNestedAt[id] = eventCount;
+        }
+    }
+
+    /**
+     * 按事件顺序传播，节点已记录两个不同事件后不再继续传播（其可达节点也必然已记录两个事件）
+     */
+    private void assignCitations() {
+        int[] firstEvent = new int[nodes.size()];
+        int[] secondEvent = new int[nodes.size()];
+        Arrays.fill(firstEvent, NONE);
+        Arrays.fill(secondEvent, NONE);
+
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int event = 0; event < eventCount; event++) {
+            pending.push(events[event]);
+            while (!pending.isEmpty()) {
+                int id = pending.pop();
+                if (firstEvent[id] == NONE) {
+                    firstEvent[id] = event;
+                } else if (firstEvent[id] != event && secondEvent[id] == NONE) {
+                    secondEvent[id] = event;
+                } else {
+                    continue;
+                }
+                pushSuccessors(nodes.get(id), pending);
+            }
+        }
+
+        for (int id = 0; id < nodes.size(); id++) {
+            int increased = (firstEvent[id] == NONE ? 0 : 1) + (secondEvent[id] == NONE ? 0 : 1);
+            Object node = nodes.get(id);
+            if (node instanceof ProtoObject) {
+                ((ProtoObject) node).setCitations(1 + increased);
+            } else {
+                // 以内嵌泛型出现之前没有被事件增加引用次数时，初始引用次数按 1 计算
+                boolean isNested = nestedGenerics.get(id) || firstNestedAt[id] != NONE &&
+                        (firstEvent[id] == NONE || firstEvent[id] >= firstNestedAt[id]);
+                ((ProtoGenericField) node).setCitations((isNested ? 1 : 0) + increased);
+            }
+        }
+    }
+
+    private void pushSuccessors(Object node, Deque<Integer> pending) {
+        if (node instanceof ProtoObject) {
+            ProtoObject protoObject = (ProtoObject) node;
+            if (protoObject.getSuperProtoObject() != null) {
+                pending.push(nodeIds.get(protoObject.getSuperProtoObject()));
+            }
+            for (ProtoField protoField : protoObject.getProtoFields()) {
+                if (protoField.getProtoObject() != null) {
+                    pending.push(nodeIds.get(protoField.getProtoObject()));
+                }
+                if (protoField.getGeneric() != null) {
+                    pending.push(nodeIds.get(protoField.getGeneric()));
+                }
+            }
+        } else {
+            ProtoGenericField genericField = (ProtoGenericField) node;
+            genericField.getProtoObjects().forEach(protoObject -> pending.push(nodeIds.get(protoObject)));
+            if (genericField.getNestedGeneric() != null) {
+                pending.push(nodeIds.get(genericField.getNestedGeneric()));
+            }
+        }
+    }
+
+    /**
+     * 重放栈中正在访问的节点，及下一个子节点的位置
+     */
+    private static final class Frame {
+
+        private final Object node;
+        private final int id;
+        private final boolean isOutermost;
+
+        /**
+         * 对象：0 为父类，其后依次为字段；泛型：泛型参数下标
+         */
+        private int cursor;
+        private int classIndex;
+        private int objectIndex;
+
+        private Frame(Object node, int id, boolean isOutermost) {
+            this.node = node;
+            this.id = id;
+            this.isOutermost = isOutermost;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+import com.dld.hll.protobuf.generator.mapper.TypeMapper;
+import com.dld.hll.protobuf.generator.mapper.TypeMapperRegistry;
+import com.dld.hll.protobuf.generator.util.AssertUtils;
+import com.dld.hll.protobuf.generator.util.StringUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 单次生成的上下文，保存本次生成的全部可变配置（如注释注解、类型映射）
+ * 每个 ProtoExecutor 运行时创建一个，同一JVM中的多个生成互不影响
+ *
+ * @author Chen Hui
+ */
+public class ProtoContext {
+
+    /**
+     * 注释使用的注解类型，及获取注解信息的方法
+     */
+    private final Class<? extends Annotation> commentType;
+    private final Method valueMethod;
+
+    /**
+     * Java类型到proto类型的映射
+     */
+    private final TypeMapper typeMapper;
+
+    /**
+     * 服务、方法、字段及类型的输出顺序
+     */
+    private ProtoOrdering ordering = ProtoOrdering.DISCOVERY;
+
+
+    public ProtoContext() {
+        this(TypeMapperRegistry.DEFAULT);
+    }
+
+    public ProtoContext(TypeMapper typeMapper) {
+        this.commentType = null;
+        this.valueMethod = null;
+        this.typeMapper = typeMapper;
+    }
+
+    public ProtoContext(Class<? extends Annotation> commentType, String valueMethodName) {
+        this(commentType, valueMethodName, TypeMapperRegistry.DEFAULT);
+    }
+
+    public ProtoContext(Class<? extends Annotation> commentType, String valueMethodName, TypeMapper typeMapper) {
+        this.commentType = commentType;
+        try {
+            this.valueMethod = commentType.getMethod(valueMethodName);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+        this.typeMapper = typeMapper;
+    }
+
+    public ProtoOrdering getOrdering() {
+        return ordering;
+    }
+
+    public void setOrdering(ProtoOrdering ordering) {
+        AssertUtils.notNull(ordering);
+        this.ordering = ordering;
+    }
+
+    /**
+     * 获取Java类型对应的proto类型
+     */
+    public ProtoTypeMapping getTypeMapping(Class<?> clazz) {
+        return typeMapper.map(clazz);
+    }
+
+    /**
+     * 获取指定元素的注释值
+     */
+    public String getComment(AnnotatedElement element) {
+        if (commentType != null) {
+            Annotation annotation = element.getAnnotation(commentType);
+            if (annotation != null) {
+                try {
+                    String comment = (String) valueMethod.invoke(annotation);
+                    return StringUtils.hasText(comment) ? comment : null;
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+}
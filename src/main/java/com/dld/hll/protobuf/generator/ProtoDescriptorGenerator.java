@@ -0,0 +1,751 @@
+package com.dld.hll.protobuf.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 由 {@link ProtoTypeTable} 直接生成二进制的 FileDescriptorSet，不需要先生成proto文本再由 protoc 解析
+ * 可用于 protoc --descriptor_set_in、基于反射的gRPC服务及动态消息工具
+ * 文件划分、消息及字段编号与 {@link ProtoFileGenerator} 生成的proto文件一致，写入前在JVM内校验全部类型引用（交叉链接）
+ * 不依赖 protobuf-java，按 descriptor.proto 中的字段编号直接编码
+ *
+ * 与proto文本的差异：Common文件同样导入 wrappers.proto，描述符集合中包含 wrappers.proto 本身；
+ * Map的键为包装类型时使用其标量类型（protoc 不允许消息类型的键）
+ *
+ * 自定义类型映射导入的文件（如 google/protobuf/timestamp.proto）不由类型表生成，需要通过 {@link #addExternalFiles(byte[])}
+ * 提供其描述符集合（如 protoc --include_imports -o 生成），合并到生成的集合中；缺少时生成失败，
+ * 否则集合中存在无法解析的依赖，protoc 及 DescriptorPool 加载时才会报错
+ *
+ * @author Chen Hui
+ */
+public class ProtoDescriptorGenerator {
+
+    private static final String WRAPPERS_FILE = "google/protobuf/wrappers.proto";
+    private static final String WRAPPERS_PACKAGE = "google.protobuf";
+    private static final String EMPTY_MESSAGE = "Empty";
+
+    /**
+     * FieldDescriptorProto 中的类型及标签
+     */
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_FLOAT = 2;
+    private static final int TYPE_MESSAGE = 11;
+    private static final int TYPE_BYTES = 12;
+    private static final int TYPE_ENUM = 14;
+    private static final int LABEL_OPTIONAL = 1;
+    private static final int LABEL_REPEATED = 3;
+
+    /**
+     * proto标量类型名 -> 类型
+     */
+    private static final Map<String, Integer> SCALAR_TYPES = new HashMap<>();
+
+    /**
+     * 包装类型全名 -> 包装的标量类型名
+     */
+    private static final Map<String, String> WRAPPER_TYPES = new LinkedHashMap<>();
+
+    static {
+        String[] scalarNames = {"double", "float", "int64", "uint64", "int32", "fixed64", "fixed32", "bool", "string",
+                null, null, "bytes", "uint32", null, "sfixed32", "sfixed64", "sint32", "sint64"};
+        for (int i = 0; i < scalarNames.length; i++) {
+            if (scalarNames[i] != null) {
+                SCALAR_TYPES.put(scalarNames[i], i + 1);
+            }
+        }
+
+        WRAPPER_TYPES.put("DoubleValue", "double");
+        WRAPPER_TYPES.put("FloatValue", "float");
+        WRAPPER_TYPES.put("Int64Value", "int64");
+        WRAPPER_TYPES.put("UInt64Value", "uint64");
+        WRAPPER_TYPES.put("Int32Value", "int32");
+        WRAPPER_TYPES.put("UInt32Value", "uint32");
+        WRAPPER_TYPES.put("BoolValue", "bool");
+        WRAPPER_TYPES.put("StringValue", "string");
+        WRAPPER_TYPES.put("BytesValue", "bytes");
+    }
+
+    private final ProtoTypeTable typeTable;
+    private final String commonProtoFileName;
+
+    /**
+     * 外部提供的文件名 -> FileDescriptorProto 的编码，按添加顺序写在生成的文件之前
+     */
+    private final Map<String, byte[]> externalFiles = new LinkedHashMap<>();
+
+
+    public ProtoDescriptorGenerator(ProtoTypeTable typeTable, String commonProtoFileName) {
+        this.typeTable = typeTable;
+        this.commonProtoFileName = commonProtoFileName;
+    }
+
+    /**
+     * 添加自定义类型映射导入的文件，同名文件只保留首次添加的，wrappers.proto 由本生成器生成，不使用外部的
+     *
+     * @param descriptorSet FileDescriptorSet 的编码
+     */
+    public void addExternalFiles(byte[] descriptorSet) {
+        WireReader reader = new WireReader(descriptorSet);
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            if (tag == (1 << 3 | WireMessage.WIRE_TYPE_LENGTH_DELIMITED)) {
+                byte[] file = reader.readBytes();
+                String fileName = readFileName(file);
+                if (!fileName.equals(WRAPPERS_FILE)) {
+                    externalFiles.putIfAbsent(fileName, file);
+                }
+            } else {
+                reader.skip(tag);
+            }
+        }
+    }
+
+    private static String readFileName(byte[] file) {
+        WireReader reader = new WireReader(file);
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            if (tag == (1 << 3 | WireMessage.WIRE_TYPE_LENGTH_DELIMITED)) {
+                return new String(reader.readBytes(), StandardCharsets.UTF_8);
+            }
+            reader.skip(tag);
+        }
+        throw new RuntimeException("Invalid descriptor set: file without name.");
+    }
+
+    /**
+     * 生成描述符集合并写入指定文件（先写临时文件再替换，临时文件名每次不同，多个执行器同时写入同一文件互不影响）
+     */
+    public void generate(Path descriptorSetFile) {
+        byte[] descriptorSet = generate();
+        try {
+            Path file = descriptorSetFile.toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Path tempFile = OutputManifest.getTempFile(file);
+            try {
+                Files.write(tempFile, descriptorSet, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                OutputManifest.moveAtomically(tempFile, file);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write descriptor set [" + e.getMessage() + "]", e);
+        }
+    }
+
+    /**
+     * 生成描述符集合（FileDescriptorSet 的编码），依赖的文件在前
+     *
+     * @throws RuntimeException 依赖的文件既不是生成的也没有外部提供，或交叉链接校验失败
+     */
+    public byte[] generate() {
+        List<FileDesc> files = new ArrayList<>();
+        files.add(buildWrappersFile());
+        files.add(buildCommonFile());
+        for (int service = 0; service < typeTable.getServiceCount(); service++) {
+            files.add(buildServiceFile(service));
+        }
+        checkDependencies(files);
+        crossLink(files);
+
+        WireMessage descriptorSet = new WireMessage();
+        externalFiles.values().forEach(file -> descriptorSet.writeBytes(1, file));
+        for (FileDesc file : files) {
+            descriptorSet.writeMessage(1, file.encode());
+        }
+        return descriptorSet.toByteArray();
+    }
+
+    /**
+     * 集合需要自包含：每个依赖的文件都在集合中
+     */
+    private void checkDependencies(List<FileDesc> files) {
+        Set<String> fileNames = new HashSet<>(externalFiles.keySet());
+        files.forEach(file -> fileNames.add(file.name));
+        Set<String> missingFiles = new TreeSet<>();
+        for (FileDesc file : files) {
+            for (String dependency : file.dependencies) {
+                if (!fileNames.contains(dependency)) {
+                    missingFiles.add(dependency);
+                }
+            }
+        }
+        if (!missingFiles.isEmpty()) {
+            throw new RuntimeException("Descriptor set depends on files " + missingFiles + " imported by custom " +
+                    "type mappings, which are not in the set. Supply their descriptor sets " +
+                    "(e.g. protoc --include_imports -o) as descriptor set dependencies.");
+        }
+    }
+
+    private FileDesc buildWrappersFile() {
+        FileDesc file = new FileDesc(WRAPPERS_FILE, "com.google.protobuf", "WrappersProto");
+        file.packageName = WRAPPERS_PACKAGE;
+        for (Map.Entry<String, String> wrapper : WRAPPER_TYPES.entrySet()) {
+            MessageDesc message = new MessageDesc(wrapper.getKey());
+            FieldDesc field = new FieldDesc("value", 1, LABEL_OPTIONAL);
+            field.type = SCALAR_TYPES.get(wrapper.getValue());
+            message.fields.add(field);
+            file.messages.add(message);
+        }
+        return file;
+    }
+
+    private FileDesc buildCommonFile() {
+        FileDesc file = new FileDesc(commonProtoFileName + ".proto", typeTable.getServicePackage(0) + ".grpc",
+                commonProtoFileName + "Class");
+        addDependencies(file, typeTable.getCommonImports());
+
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isShared(type) && typeTable.getTypeKind(type) != ProtoTypeTable.KIND_GENERIC) {
+                addObjectOrEnum(file, type);
+            }
+        }
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isShared(type) && typeTable.getTypeKind(type) == ProtoTypeTable.KIND_GENERIC) {
+                file.messages.add(buildGenericFieldObject(type));
+            }
+        }
+        file.messages.add(new MessageDesc(EMPTY_MESSAGE));
+        return file;
+    }
+
+    private FileDesc buildServiceFile(int service) {
+        String serviceName = typeTable.getServiceName(service);
+        FileDesc file = new FileDesc(serviceName + ".proto", typeTable.getServicePackage(service) + ".grpc",
+                serviceName + "Class");
+        file.dependencies.add(commonProtoFileName + ".proto");
+        addDependencies(file, typeTable.getServiceImports(service));
+
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isMember(service, type) && typeTable.getTypeKind(type) != ProtoTypeTable.KIND_GENERIC) {
+                addObjectOrEnum(file, type);
+            }
+        }
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isMember(service, type) && typeTable.getTypeKind(type) == ProtoTypeTable.KIND_GENERIC) {
+                file.messages.add(buildGenericFieldObject(type));
+            }
+        }
+
+        ServiceDesc serviceDesc = new ServiceDesc(serviceName);
+        for (int method = typeTable.getMethodStart(service); method < typeTable.getMethodEnd(service); method++) {
+            serviceDesc.methods.add(new MethodDesc(typeTable.getMethodName(method),
+                    getMessageTypeName(typeTable.getMethodParameter(method)),
+                    getMessageTypeName(typeTable.getMethodReturn(method))));
+        }
+        file.services.add(serviceDesc);
+        return file;
+    }
+
+    /**
+     * 导入 wrappers.proto 及文件中的类型的自定义类型映射需要的文件，同一文件只导入一次
+     */
+    private void addDependencies(FileDesc file, List<String> importFiles) {
+        file.dependencies.add(WRAPPERS_FILE);
+        for (String importFile : importFiles) {
+            if (!importFile.equals(WRAPPERS_FILE)) {
+                file.dependencies.add(importFile);
+            }
+        }
+    }
+
+    private void addObjectOrEnum(FileDesc file, int type) {
+        if (typeTable.getTypeKind(type) == ProtoTypeTable.KIND_ENUM) {
+            EnumDesc enumDesc = new EnumDesc(typeTable.getTypeName(type));
+            enumDesc.values.add("UNSPECIFIED");
+            for (int field = typeTable.getFieldStart(type); field < typeTable.getFieldEnd(type); field++) {
+                enumDesc.values.add(typeTable.getFieldName(field));
+            }
+            file.enums.add(enumDesc);
+        } else {
+            file.messages.add(buildObject(type));
+        }
+    }
+
+    /**
+     * 对象消息，父类字段（上层父类优先）在前，编号连续
+     */
+    private MessageDesc buildObject(int type) {
+        MessageDesc message = new MessageDesc(typeTable.getTypeName(type));
+        Deque<Integer> types = new ArrayDeque<>();
+        for (int t = type; t != ProtoTypeTable.NONE; t = typeTable.getSuperType(t)) {
+            types.push(t);
+        }
+        int number = 1;
+        while (!types.isEmpty()) {
+            int t = types.pop();
+            for (int field = typeTable.getFieldStart(t); field < typeTable.getFieldEnd(t); field++) {
+                addField(message, typeTable.getFieldName(field), number++, typeTable.getFieldLabel(field),
+                        typeTable.getFieldKey(field), typeTable.getFieldValue(field));
+            }
+        }
+        return message;
+    }
+
+    private MessageDesc buildGenericFieldObject(int type) {
+        MessageDesc message = new MessageDesc(typeTable.getTypeName(type));
+        addField(message, typeTable.getGenericFieldName(type), 1, typeTable.getTypeLabel(type),
+                typeTable.getTypeKey(type), typeTable.getTypeValue(type));
+        return message;
+    }
+
+    /**
+     * Map字段为内嵌的 XxxEntry 消息（map_entry）的重复字段
+     */
+    private void addField(MessageDesc message, String name, int number, byte label, int key, int value) {
+        if (label != ProtoTypeTable.LABEL_MAP) {
+            FieldDesc field = new FieldDesc(name, number,
+                    label == ProtoTypeTable.LABEL_REPEATED ? LABEL_REPEATED : LABEL_OPTIONAL);
+            setType(field, value, false);
+            message.fields.add(field);
+            return;
+        }
+
+        MessageDesc entry = new MessageDesc(toCamelCase(name) + "Entry");
+        entry.isMapEntry = true;
+        FieldDesc keyField = new FieldDesc("key", 1, LABEL_OPTIONAL);
+        setType(keyField, key, true);
+        FieldDesc valueField = new FieldDesc("value", 2, LABEL_OPTIONAL);
+        setType(valueField, value, false);
+        entry.fields.add(keyField);
+        entry.fields.add(valueField);
+        message.nestedTypes.add(entry);
+
+        FieldDesc field = new FieldDesc(name, number, LABEL_REPEATED);
+        field.type = TYPE_MESSAGE;
+        field.typeName = "." + message.name + "." + entry.name;
+        field.mapKey = keyField;
+        message.fields.add(field);
+    }
+
+    /**
+     * 自定义映射的非标量类型只设置类型名，由使用方按导入的文件解析为消息或枚举
+     */
+    private void setType(FieldDesc field, int ref, boolean isMapKey) {
+        if (ref >= 0) {
+            field.type = typeTable.getTypeKind(ref) == ProtoTypeTable.KIND_ENUM ? TYPE_ENUM : TYPE_MESSAGE;
+            field.typeName = "." + typeTable.getTypeName(ref);
+            return;
+        }
+
+        String typeName = typeTable.getRefName(ref);
+        String wrappedType = getWrappedType(typeName);
+        if (isMapKey && wrappedType != null) {
+            typeName = wrappedType;
+        }
+        if (SCALAR_TYPES.containsKey(typeName)) {
+            field.type = SCALAR_TYPES.get(typeName);
+        } else {
+            field.type = wrappedType != null ? TYPE_MESSAGE : 0;
+            field.typeName = "." + typeName;
+        }
+    }
+
+    private static String getWrappedType(String typeName) {
+        if (!typeName.startsWith(WRAPPERS_PACKAGE + ".")) {
+            return null;
+        }
+        return WRAPPER_TYPES.get(typeName.substring(WRAPPERS_PACKAGE.length() + 1));
+    }
+
+    private String getMessageTypeName(int type) {
+        return "." + (type == ProtoTypeTable.NONE ? EMPTY_MESSAGE : typeTable.getTypeName(type));
+    }
+
+    /**
+     * 与 protoc 生成Map内嵌消息名的规则一致：去掉下划线，下划线后及首字母大写
+     */
+    private static String toCamelCase(String name) {
+        StringBuilder camelCase = new StringBuilder(name.length());
+        boolean isCapitalizeNext = true;
+        for (char c : name.toCharArray()) {
+            if (c == '_') {
+                isCapitalizeNext = true;
+            } else if (isCapitalizeNext) {
+                camelCase.append(Character.toUpperCase(c));
+                isCapitalizeNext = false;
+            } else {
+                camelCase.append(c);
+            }
+        }
+        return camelCase.toString();
+    }
+
+    /**
+     * 交叉链接校验（与 protoc 构建描述符时的规则一致）：
+     * 名称在包内唯一（proto3 枚举值与枚举同级，字段在消息内唯一），引用的类型在当前文件或直接依赖的文件中定义，
+     * 方法的参数及返回值为消息，Map的键为整数、布尔或字符串类型
+     * 外部提供的文件（自定义映射导入的文件）只有编码，其中的类型无法校验，直接跳过
+     */
+    private static void crossLink(List<FileDesc> files) {
+        List<String> problems = new ArrayList<>();
+        Map<String, FileDesc> fileNames = new HashMap<>();
+        Map<String, Symbol> symbols = new HashMap<>();
+        for (FileDesc file : files) {
+            fileNames.put(file.name, file);
+            String scope = file.packageName == null ? "" : "." + file.packageName;
+            for (MessageDesc message : file.messages) {
+                String messageName = scope + "." + message.name;
+                define(symbols, messageName, new Symbol(file, true), problems);
+                for (FieldDesc field : message.fields) {
+                    define(symbols, messageName + "." + field.name, new Symbol(file, false), problems);
+                }
+                for (MessageDesc nestedType : message.nestedTypes) {
+                    define(symbols, messageName + "." + nestedType.name, new Symbol(file, true), problems);
+                }
+            }
+            for (EnumDesc enumDesc : file.enums) {
+                define(symbols, scope + "." + enumDesc.name, new Symbol(file, false), problems);
+                for (String value : enumDesc.values) {
+                    define(symbols, scope + "." + value, new Symbol(file, false), problems);
+                }
+            }
+            for (ServiceDesc service : file.services) {
+                define(symbols, scope + "." + service.name, new Symbol(file, false), problems);
+            }
+        }
+
+        for (FileDesc file : files) {
+            boolean isCompleteDependencies = fileNames.keySet().containsAll(file.dependencies);
+            for (MessageDesc message : file.messages) {
+                List<FieldDesc> fields = new ArrayList<>(message.fields);
+                message.nestedTypes.forEach(nestedType -> fields.addAll(nestedType.fields));
+                for (FieldDesc field : fields) {
+                    String where = "field [" + message.name + "." + field.name + "] of file [" + file.name + "]";
+                    if (field.typeName != null) {
+                        resolve(file, field.typeName, isCompleteDependencies, symbols, where, problems);
+                    }
+                    if (field.mapKey != null && !isValidMapKey(field.mapKey)) {
+                        problems.add("Map key of " + where + " must be an integral, bool or string type.");
+                    }
+                }
+            }
+            for (ServiceDesc service : file.services) {
+                for (MethodDesc method : service.methods) {
+                    String where = "method [" + service.name + "." + method.name + "] of file [" + file.name + "]";
+                    for (String typeName : Arrays.asList(method.inputType, method.outputType)) {
+                        Symbol symbol = resolve(file, typeName, true, symbols, where, problems);
+                        if (symbol != null && !symbol.isMessage) {
+                            problems.add("[" + typeName + "] used by " + where + " is not a message.");
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new RuntimeException("Descriptor cross-linking failed:\n" + String.join("\n", problems));
+        }
+    }
+
+    private static void define(Map<String, Symbol> symbols, String fullName, Symbol symbol, List<String> problems) {
+        Symbol existing = symbols.putIfAbsent(fullName, symbol);
+        if (existing != null) {
+            problems.add("[" + fullName.substring(1) + "] in file [" + symbol.file.name +
+                    "] is already defined in file [" + existing.file.name + "].");
+        }
+    }
+
+    /**
+     * @return 无法解析或不可见时返回 null
+     */
+    private static Symbol resolve(FileDesc file, String typeName, boolean isCompleteDependencies,
+                                  Map<String, Symbol> symbols, String where, List<String> problems) {
+        Symbol symbol = symbols.get(typeName);
+        if (symbol == null) {
+            if (isCompleteDependencies) {
+                problems.add("[" + typeName.substring(1) + "] used by " + where + " is not defined.");
+            }
+            return null;
+        }
+        if (symbol.file != file && !file.dependencies.contains(symbol.file.name)) {
+            problems.add("[" + typeName.substring(1) + "] used by " + where + " is defined in file [" +
+                    symbol.file.name + "], which is not imported.");
+            return null;
+        }
+        return symbol;
+    }
+
+    private static boolean isValidMapKey(FieldDesc keyField) {
+        int type = keyField.type;
+        return type != 0 && type != TYPE_DOUBLE && type != TYPE_FLOAT && type != TYPE_BYTES &&
+                type != TYPE_MESSAGE && type != TYPE_ENUM;
+    }
+
+    private static final class Symbol {
+
+        private final FileDesc file;
+        private final boolean isMessage;
+
+        private Symbol(FileDesc file, boolean isMessage) {
+            this.file = file;
+            this.isMessage = isMessage;
+        }
+    }
+
+    /**
+     * FileDescriptorProto
+     */
+    private static final class FileDesc {
+
+        private final String name;
+        private String packageName;
+        private final List<String> dependencies = new ArrayList<>();
+        private final List<MessageDesc> messages = new ArrayList<>();
+        private final List<EnumDesc> enums = new ArrayList<>();
+        private final List<ServiceDesc> services = new ArrayList<>();
+        private final String javaPackage;
+        private final String javaOuterClassname;
+
+        private FileDesc(String name, String javaPackage, String javaOuterClassname) {
+            this.name = name;
+            this.javaPackage = javaPackage;
+            this.javaOuterClassname = javaOuterClassname;
+        }
+
+        private WireMessage encode() {
+            WireMessage file = new WireMessage().writeString(1, name).writeString(2, packageName);
+            dependencies.forEach(dependency -> file.writeString(3, dependency));
+            messages.forEach(message -> file.writeMessage(4, message.encode()));
+            enums.forEach(enumDesc -> file.writeMessage(5, enumDesc.encode()));
+            services.forEach(service -> file.writeMessage(6, service.encode()));
+            // FileOptions：java_package、java_outer_classname、java_multiple_files
+            file.writeMessage(8, new WireMessage().writeString(1, javaPackage).writeString(8, javaOuterClassname)
+                    .writeVarint(10, 1));
+            return file.writeString(12, "proto3");
+        }
+    }
+
+    /**
+     * DescriptorProto
+     */
+    private static final class MessageDesc {
+
+        private final String name;
+        private final List<FieldDesc> fields = new ArrayList<>();
+        private final List<MessageDesc> nestedTypes = new ArrayList<>();
+        private boolean isMapEntry;
+
+        private MessageDesc(String name) {
+            this.name = name;
+        }
+
+        private WireMessage encode() {
+            WireMessage message = new WireMessage().writeString(1, name);
+            fields.forEach(field -> message.writeMessage(2, field.encode()));
+            nestedTypes.forEach(nestedType -> message.writeMessage(3, nestedType.encode()));
+            if (isMapEntry) {
+                // MessageOptions.map_entry
+                message.writeMessage(7, new WireMessage().writeVarint(7, 1));
+            }
+            return message;
+        }
+    }
+
+    /**
+     * FieldDescriptorProto，类型为 0 时表示未设置
+     */
+    private static final class FieldDesc {
+
+        private final String name;
+        private final int number;
+        private final int label;
+        private int type;
+        private String typeName;
+
+        /**
+         * Map字段的键（只用于校验）
+         */
+        private FieldDesc mapKey;
+
+        private FieldDesc(String name, int number, int label) {
+            this.name = name;
+            this.number = number;
+            this.label = label;
+        }
+
+        private WireMessage encode() {
+            WireMessage field = new WireMessage().writeString(1, name).writeVarint(3, number).writeVarint(4, label);
+            if (type != 0) {
+                field.writeVarint(5, type);
+            }
+            return field.writeString(6, typeName);
+        }
+    }
+
+    /**
+     * EnumDescriptorProto，值的编号为下标
+     */
+    private static final class EnumDesc {
+
+        private final String name;
+        private final List<String> values = new ArrayList<>();
+
+        private EnumDesc(String name) {
+            this.name = name;
+        }
+
+        private WireMessage encode() {
+            WireMessage enumDesc = new WireMessage().writeString(1, name);
+            for (int number = 0; number < values.size(); number++) {
+                enumDesc.writeMessage(2, new WireMessage().writeString(1, values.get(number)).writeVarint(2, number));
+            }
+            return enumDesc;
+        }
+    }
+
+    /**
+     * ServiceDescriptorProto
+     */
+    private static final class ServiceDesc {
+
+        private final String name;
+        private final List<MethodDesc> methods = new ArrayList<>();
+
+        private ServiceDesc(String name) {
+            this.name = name;
+        }
+
+        private WireMessage encode() {
+            WireMessage service = new WireMessage().writeString(1, name);
+            methods.forEach(method -> service.writeMessage(2, new WireMessage().writeString(1, method.name)
+                    .writeString(2, method.inputType).writeString(3, method.outputType)));
+            return service;
+        }
+    }
+
+    /**
+     * MethodDescriptorProto
+     */
+    private static final class MethodDesc {
+
+        private final String name;
+        private final String inputType;
+        private final String outputType;
+
+        private MethodDesc(String name, String inputType, String outputType) {
+            this.name = name;
+            this.inputType = inputType;
+            this.outputType = outputType;
+        }
+    }
+
+    /**
+     * protobuf 编码：字段按写入顺序编码，值为 null 的字符串不写入
+     */
+    private static final class WireMessage {
+
+        private static final int WIRE_TYPE_VARINT = 0;
+        private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private WireMessage writeString(int field, String value) {
+            if (value != null) {
+                writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        private WireMessage writeVarint(int field, long value) {
+            writeRawVarint(field << 3 | WIRE_TYPE_VARINT);
+            writeRawVarint(value);
+            return this;
+        }
+
+        private WireMessage writeMessage(int field, WireMessage message) {
+            return writeBytes(field, message.toByteArray());
+        }
+
+        private WireMessage writeBytes(int field, byte[] bytes) {
+            writeRawVarint(field << 3 | WIRE_TYPE_LENGTH_DELIMITED);
+            writeRawVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        private void writeRawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * protobuf 解码，只用于读取外部描述符集合中的文件
+     */
+    private static final class WireReader {
+
+        private final byte[] bytes;
+        private int position;
+
+        private WireReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        private int readTag() {
+            return (int) readRawVarint();
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readRawVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw new RuntimeException("Invalid descriptor set: truncated message.");
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        private void skip(int tag) {
+            switch (tag & 0x7) {
+                case WireMessage.WIRE_TYPE_VARINT:
+                    readRawVarint();
+                    break;
+                case WireMessage.WIRE_TYPE_LENGTH_DELIMITED:
+                    readBytes();
+                    break;
+                case 1:
+                    position += 8;
+                    break;
+                case 5:
+                    position += 4;
+                    break;
+                default:
+                    throw new RuntimeException("Invalid descriptor set: unsupported wire type of tag [" + tag + "].");
+            }
+            if (position > bytes.length) {
+                throw new RuntimeException("Invalid descriptor set: truncated message.");
+            }
+        }
+
+        private long readRawVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (!hasRemaining()) {
+                    throw new RuntimeException("Invalid descriptor set: truncated varint.");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Invalid descriptor set: malformed varint.");
+        }
+    }
+}
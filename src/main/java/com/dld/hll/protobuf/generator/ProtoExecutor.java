@@ -1,21 +1,38 @@
 package com.dld.hll.protobuf.generator;
 
-import com.dld.hll.protobuf.generator.entity.ProtoCommentSupport;
+import com.dld.hll.protobuf.generator.entity.ProtoFieldType;
+import com.dld.hll.protobuf.generator.entity.ProtoService;
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+import com.dld.hll.protobuf.generator.mapper.TypeMapper;
+import com.dld.hll.protobuf.generator.mapper.TypeMapperRegistry;
+import com.dld.hll.protobuf.generator.scanner.ClasspathScanner;
 import com.dld.hll.protobuf.generator.scanner.JarFileScanner;
 import com.dld.hll.protobuf.generator.scanner.ProjectScanner;
+import com.dld.hll.protobuf.generator.scanner.ScanIndex;
 import com.dld.hll.protobuf.generator.scanner.SelectableScanner;
+import com.dld.hll.protobuf.generator.scanner.ServiceClassLoader;
 import com.dld.hll.protobuf.generator.selector.ExtendsInterfaceSelector;
+import com.dld.hll.protobuf.generator.selector.InterfaceHierarchyIndex;
 import com.dld.hll.protobuf.generator.selector.NamePatternSelector;
+import com.dld.hll.protobuf.generator.selector.PackageSelector;
 import com.dld.hll.protobuf.generator.util.AssertUtils;
 import com.dld.hll.protobuf.generator.util.StringUtils;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author Chen Hui
@@ -32,55 +49,185 @@ public class ProtoExecutor {
     }
 
     public void executor() {
-        ProtoInfoRegistry registry = new ProtoInfoRegistry();
-        ProtoInfoReader reader = new ProtoInfoReader();
-        reader.setRegistry(registry);
-
         // 获取当前项目路径
+        Path projectPath = resolveProjectPath();
+
+        // 扫描器（生成只依赖类型表，解析完成后即可关闭类加载器）
+        ProtoTypeTable typeTable;
+        try (SelectableScanner scanner = createScanner(projectPath)) {
+            typeTable = scanAndParse(scanner, null);
+        }
+
+        // 生成Proto文件
+        createGenerator(typeTable, projectPath).generate();
+        generateDescriptorSet(typeTable);
+    }
+
+    /**
+     * 监听模式：持续监听项目源码及编译输出目录的变化，只重新生成受影响服务的Proto文件
+     * 必须指定编译输出目录，每次重新生成都从该目录隔离加载最新编译的类（生成器自身的类加载器无法重新加载已修改的类）
+     * 阻塞当前线程，直到线程被中断
+     */
+    public void watch() {
+        AssertUtils.isTrue(builder.getJarFile() == null && builder.getClasspath() == null,
+                "Watch mode only supports project scanning");
+        AssertUtils.notNull(builder.getClassesPath(), "Watch mode requires parameter [classesPath]");
+        Path projectPath = resolveProjectPath();
+        new ProtoWatcher(this, projectPath, getProjectJavaPath(projectPath, builder.getProjectBasePath()),
+                projectPath.resolve(builder.getClassesPath()), builder.getWatchDebounceMillis(),
+                builder.getWatchFailureHandler()).watch();
+    }
+
+    /**
+     * 获取当前项目路径
+     */
+    Path resolveProjectPath() {
         Path projectPath = builder.getProjectPath();
         if (projectPath == null) {
             projectPath = getProjectPath(builder.getProjectName());
         }
+        return projectPath;
+    }
 
-        // 扫描器
-        SelectableScanner scanner;
-        if (builder.getJarFile() != null) {
-            scanner = new JarFileScanner(builder.getJarFile(), builder.getScanPackage(), builder.isNeedLoadJarFile());
-        } else {
-            Path projectJavaPath = getProjectJavaPath(projectPath, builder.getProjectBasePath());
-            scanner = new ProjectScanner(projectJavaPath, builder.getScanPackage());
+    /**
+     * 扫描并解析全部服务接口，返回类型表（解析过程中的对象图在返回前释放）
+     *
+     * @param serviceHandler 对象图释放之前回调全部服务，可以为 null
+     */
+    ProtoTypeTable scanAndParse(SelectableScanner scanner, Consumer<List<ProtoService>> serviceHandler) {
+        ProtoInfoRegistry registry = new ProtoInfoRegistry();
+        ProtoInfoReader reader = new ProtoInfoReader();
+        reader.setRegistry(registry);
+        reader.setContext(createContext());
+        reader.setThreads(builder.getParseThreads());
+        reader.setServiceHandler(serviceHandler);
+
+        // 添加选择器（扫描器按开销排序执行）
+        if (!builder.getExtendsInterfaces().isEmpty()) {
+            scanner.addSelector(new ExtendsInterfaceSelector(new InterfaceHierarchyIndex(),
+                    builder.getExtendsInterfaces().toArray(new Class<?>[0])));
         }
-
-        // 添加选择器
-        if (builder.getExtendsInterface() != null) {
-            scanner.addSelector(new ExtendsInterfaceSelector(builder.getExtendsInterface()));
+        if (!builder.getIncludePackages().isEmpty() || !builder.getExcludePackages().isEmpty()) {
+            scanner.addSelector(new PackageSelector(builder.getIncludePackages(), builder.getExcludePackages()));
         }
+        // 没有指定类名模式和继承接口时使用默认类名模式
+        List<String> includePatterns = new ArrayList<>();
         if (builder.getNamePattern() != null) {
-            scanner.addSelector(new NamePatternSelector(builder.getNamePattern()));
+            includePatterns.add(builder.getNamePattern());
+        } else if (builder.getExtendsInterfaces().isEmpty()) {
+            includePatterns.add(".*Service$");
+        }
+        if (!includePatterns.isEmpty() || !builder.getExcludePatterns().isEmpty()) {
+            scanner.addSelector(new NamePatternSelector(includePatterns, builder.getExcludePatterns()));
         }
-        // 没有选择器的情况下添加默认选择器
-        if (scanner.getSelectors() == null) {
-            scanner.addSelector(new NamePatternSelector(".*Service$"));
+
+        // 扫描索引
+        ScanIndex scanIndex = null;
+        if (builder.getScanIndexFile() != null) {
+            scanIndex = ScanIndex.load(Paths.get(builder.getScanIndexFile()));
+            scanner.setScanIndex(scanIndex);
         }
 
-        // 加载全部的接口
-        reader.load(scanner.scanServices());
+        // 加载全部的接口（流水线模式下边扫描边解析）
+        if (builder.getPipelineQueueCapacity() > 0) {
+            reader.load(scanner, builder.getPipelineQueueCapacity());
+        } else {
+            reader.load(scanner.scanServices());
+        }
+        if (scanIndex != null) {
+            scanIndex.save();
+        }
+        return registry.getTypeTable();
+    }
 
+    /**
+     * 创建Proto文件生成器
+     */
+    ProtoFileGenerator createGenerator(ProtoTypeTable typeTable, Path projectPath) {
         // 生成目录
         File generatePath = builder.getGeneratePath() != null ? new File(builder.getGeneratePath()) :
                 projectPath.resolve(builder.getGenerateBasePath()).toFile();
 
         // Proto文件生成器
         String commonProtoFileName = getCommonProtoFileName(builder.getProjectName());
-        ProtoFileGenerator generator = new ProtoFileGenerator(registry, generatePath, commonProtoFileName);
+        ProtoFileGenerator generator = new ProtoFileGenerator(typeTable, generatePath, commonProtoFileName);
+        generator.setIncremental(builder.isIncrementalOutput());
+        generator.setThreads(builder.getGenerateThreads());
+        return generator;
+    }
 
-        // 指定注释注解，及获取注释对应的方法
-        if (builder.getCommentClass() != null) {
-            assignCommon(builder.getCommentClass(), builder.getCommentMethodName());
+    /**
+     * 指定描述符集合文件时，由类型表直接生成二进制描述符集合，合并自定义类型映射导入的文件的描述符集合
+     */
+    void generateDescriptorSet(ProtoTypeTable typeTable) {
+        if (builder.getDescriptorSetFile() != null) {
+            ProtoDescriptorGenerator generator = new ProtoDescriptorGenerator(typeTable,
+                    getCommonProtoFileName(builder.getProjectName()));
+            for (String dependency : builder.getDescriptorSetDependencies()) {
+                try {
+                    generator.addExternalFiles(Files.readAllBytes(Paths.get(dependency)));
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not read descriptor set [" + e.getMessage() + "]", e);
+                }
+            }
+            generator.generate(Paths.get(builder.getDescriptorSetFile()));
         }
+    }
 
-        // 生成Proto文件
-        generator.generate();
+    /**
+     * 创建扫描器
+     */
+    SelectableScanner createScanner(Path projectPath) {
+        if (builder.getClasspath() != null) {
+            ServiceClassLoader serviceClassLoader = ServiceClassLoader.ofClasspath(builder.getClasspath(),
+                    builder.isReuseClassLoader(), getSharedClassNames());
+            ClasspathScanner classpathScanner = new ClasspathScanner(builder.getClasspath(), builder.getScanPackage(),
+                    serviceClassLoader);
+            if (builder.getScanThreads() > 0) {
+                classpathScanner.setThreads(builder.getScanThreads());
+            }
+            return classpathScanner;
+        }
+
+        if (builder.getJarFile() != null) {
+            ServiceClassLoader serviceClassLoader = builder.isNeedLoadJarFile() ?
+                    ServiceClassLoader.ofJar(builder.getJarFile(), builder.isReuseClassLoader(), getSharedClassNames()) :
+                    ServiceClassLoader.ofDefault();
+            return new JarFileScanner(builder.getJarFile(), builder.getScanPackage(), serviceClassLoader);
+        }
+
+        Path projectJavaPath = getProjectJavaPath(projectPath, builder.getProjectBasePath());
+        ProjectScanner projectScanner = new ProjectScanner(projectJavaPath, builder.getScanPackage());
+        projectScanner.setParallel(builder.isParallelScan());
+        // 指定编译输出目录时从该目录隔离加载，每次运行都能加载到最新编译的类
+        if (builder.getClassesPath() != null) {
+            projectScanner.setServiceClassLoader(ServiceClassLoader.ofClasspath(
+                    Collections.singletonList(projectPath.resolve(builder.getClassesPath()).toString()), false,
+                    getSharedClassNames()));
+        }
+        return projectScanner;
+    }
+
+    /**
+     * 需要与隔离类加载器共享的类（注释注解、继承接口及自定义类型映射的类型需要与调用方是同一个 Class）
+     */
+    private List<String> getSharedClassNames() {
+        List<String> sharedClassNames = new ArrayList<>();
+        if (builder.getCommentClass() != null) {
+            sharedClassNames.add(builder.getCommentClass().getName());
+        }
+        for (Class<?> extendsInterface : builder.getExtendsInterfaces()) {
+            sharedClassNames.add(extendsInterface.getName());
+        }
+        for (Class<?> javaType : builder.getTypeMappings().keySet()) {
+            sharedClassNames.add(javaType.getName());
+        }
+        for (TypeMapper typeMapper : builder.getTypeMappers()) {
+            for (Class<?> mappedType : typeMapper.getMappedTypes()) {
+                sharedClassNames.add(mappedType.getName());
+            }
+        }
+        return sharedClassNames;
     }
 
     /**
@@ -135,15 +282,24 @@ public class ProtoExecutor {
     }
 
     /**
-     * 指定全局注释类型和获取方法
+     * 创建本次生成的上下文，指定注释注解及获取注释对应的方法、类型映射
+     */
+    private ProtoContext createContext() {
+        TypeMapper typeMapper = createTypeMapper();
+        ProtoContext context = builder.getCommentClass() == null ? new ProtoContext(typeMapper) :
+                new ProtoContext(builder.getCommentClass(), builder.getCommentMethodName(), typeMapper);
+        context.setOrdering(builder.getOrdering());
+        return context;
+    }
+
+    /**
+     * 没有自定义类型映射时使用共用的内置映射
      */
-    private void assignCommon(Class<? extends Annotation> commentType, String valueMethod) {
-        ProtoCommentSupport.commentType = commentType;
-        try {
-            ProtoCommentSupport.valueMethod = commentType.getMethod(valueMethod);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+    private TypeMapper createTypeMapper() {
+        if (builder.getTypeMappings().isEmpty() && builder.getTypeMappers().isEmpty()) {
+            return TypeMapperRegistry.DEFAULT;
         }
+        return new TypeMapperRegistry(builder.getTypeMappings(), builder.getTypeMappers());
     }
 
     @Getter
@@ -161,12 +317,43 @@ public class ProtoExecutor {
          */
         private String jarFile;
 
+        /**
+         * 指定要生成Proto文件的类路径（多个Jar包或类目录）
+         * 当指定当前参数，将忽略 jarFile 和 projectBasePath
+         */
+        private List<String> classpath;
+
+        /**
+         * 扫描类路径时的并发线程数，默认为CPU核数
+         */
+        private int scanThreads;
+
+        /**
+         * 解析服务接口时的并发线程数，默认串行解析
+         */
+        private int parseThreads = 1;
+
+        /**
+         * 大于 0 时使用流水线模式：扫描到的服务接口放入该容量的有界队列，由解析线程同时解析
+         */
+        private int pipelineQueueCapacity;
+
+        /**
+         * 生成proto文件时的并发线程数，默认串行生成
+         */
+        private int generateThreads = 1;
+
         /**
          * 是否需要加载Jar文件
          * 如果外部完成环境加载，可以不用再次加载
          */
         private boolean isNeedLoadJarFile = true;
 
+        /**
+         * 是否复用Jar包的类加载器（按Jar包内容摘要缓存，适用于同一JVM内多次运行）
+         */
+        private boolean isReuseClassLoader;
+
         /**
          * 指定项目路径
          */
@@ -178,21 +365,81 @@ public class ProtoExecutor {
          */
         private String projectBasePath;
 
+        /**
+         * 项目的编译输出目录（相对项目路径，如 target/classes）
+         * 指定后项目扫描时从该目录隔离加载类；监听模式必传，同时监听该目录
+         */
+        private String classesPath;
+
+        /**
+         * 监听模式下，文件变化后等待该时间内没有新的变化才重新生成
+         */
+        private long watchDebounceMillis = 300;
+
+        /**
+         * 监听模式下，源码尚未编译或只编译了一部分导致类加载失败时的回调，本次跳过，继续监听
+         * 其他异常不回调，直接结束监听
+         */
+        private Consumer<Throwable> watchFailureHandler = Throwable::printStackTrace;
+
         /**
          * 扫描Jar包或者项目基础路径内指定路径
          */
         private String scanPackage;
 
         /**
-         * 类满足继承指定接口
+         * 是否并行扫描项目目录
+         */
+        private boolean isParallelScan;
+
+        /**
+         * 扫描索引文件，指定后只重新扫描发生变化的Jar包或目录
          */
-        private Class<?> extendsInterface;
+        private String scanIndexFile;
+
+        /**
+         * 是否增量生成：内容未变化的proto文件不重写，只删除上次生成的过期文件（记录在生成目录的输出清单中）
+         */
+        private boolean isIncrementalOutput;
+
+        /**
+         * 服务、方法、字段及类型的输出顺序，默认按扫描及反射返回的顺序
+         * 需要与运行环境无关的稳定输出（如构建缓存）时使用 DECLARATION 或 TOPOLOGICAL
+         */
+        private ProtoOrdering ordering = ProtoOrdering.DISCOVERY;
+
+        /**
+         * 二进制描述符集合（FileDescriptorSet）文件，指定后同时生成，可用于 protoc --descriptor_set_in
+         */
+        private String descriptorSetFile;
+
+        /**
+         * 自定义类型映射导入的proto文件的描述符集合文件（如 protoc --include_imports -o 生成），合并到生成的描述符集合中
+         * 生成描述符集合时，导入的文件缺少描述符则生成失败
+         */
+        private List<String> descriptorSetDependencies = new ArrayList<>();
+
+        /**
+         * 类满足继承任一指定接口
+         */
+        private List<Class<?>> extendsInterfaces = new ArrayList<>();
 
         /**
          * 类名满足指定模式
          */
         private String namePattern;
 
+        /**
+         * 类名满足任一排除模式时不选择
+         */
+        private List<String> excludePatterns = new ArrayList<>();
+
+        /**
+         * 只选择指定包（含子包）中的类，排除指定包（含子包）中的类，以最长匹配的包名为准
+         */
+        private List<String> includePackages = new ArrayList<>();
+        private List<String> excludePackages = new ArrayList<>();
+
         /**
          * 解析接口时，注释注解的类
          * 获取注释值的方法名
@@ -200,6 +447,12 @@ public class ProtoExecutor {
         private Class<? extends Annotation> commentClass;
         private String commentMethodName;
 
+        /**
+         * 自定义类型映射（优先于内置映射），及自定义类型映射器（按添加顺序调用）
+         */
+        private Map<Class<?>, ProtoTypeMapping> typeMappings = new LinkedHashMap<>();
+        private List<TypeMapper> typeMappers = new ArrayList<>();
+
         /**
          * 生成Proto文件的全路径
          */
@@ -232,26 +485,120 @@ public class ProtoExecutor {
             return this;
         }
 
+        public Builder setClasspath(List<String> classpath) {
+            AssertUtils.notEmpty(classpath);
+            this.classpath = new ArrayList<>(classpath);
+            return this;
+        }
+
+        public Builder setScanThreads(int scanThreads) {
+            AssertUtils.isTrue(scanThreads > 0);
+            this.scanThreads = scanThreads;
+            return this;
+        }
+
+        public Builder setParseThreads(int parseThreads) {
+            AssertUtils.isTrue(parseThreads > 0);
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        public Builder setGenerateThreads(int generateThreads) {
+            AssertUtils.isTrue(generateThreads > 0);
+            this.generateThreads = generateThreads;
+            return this;
+        }
+
+        public Builder setPipelineQueueCapacity(int pipelineQueueCapacity) {
+            AssertUtils.isTrue(pipelineQueueCapacity > 0);
+            this.pipelineQueueCapacity = pipelineQueueCapacity;
+            return this;
+        }
+
         public Builder setNeedLoadJarFile(boolean isNeedLoadJarFile) {
             this.isNeedLoadJarFile = isNeedLoadJarFile;
             return this;
         }
 
+        public Builder setReuseClassLoader(boolean isReuseClassLoader) {
+            this.isReuseClassLoader = isReuseClassLoader;
+            return this;
+        }
+
         public Builder setProjectBasePath(String projectBasePath) {
             AssertUtils.hasText(projectBasePath);
             this.projectBasePath = projectBasePath;
             return this;
         }
 
+        public Builder setClassesPath(String classesPath) {
+            AssertUtils.hasText(classesPath);
+            this.classesPath = classesPath;
+            return this;
+        }
+
+        public Builder setWatchDebounceMillis(long watchDebounceMillis) {
+            AssertUtils.isTrue(watchDebounceMillis >= 0);
+            this.watchDebounceMillis = watchDebounceMillis;
+            return this;
+        }
+
+        public Builder setWatchFailureHandler(Consumer<Throwable> watchFailureHandler) {
+            AssertUtils.notNull(watchFailureHandler);
+            this.watchFailureHandler = watchFailureHandler;
+            return this;
+        }
+
         public Builder setScanPackage(String scanPackage) {
             AssertUtils.hasText(scanPackage);
             this.scanPackage = scanPackage;
             return this;
         }
 
+        public Builder setParallelScan(boolean isParallelScan) {
+            this.isParallelScan = isParallelScan;
+            return this;
+        }
+
+        public Builder setScanIndexFile(String scanIndexFile) {
+            AssertUtils.hasText(scanIndexFile);
+            this.scanIndexFile = scanIndexFile;
+            return this;
+        }
+
+        public Builder setIncrementalOutput(boolean isIncrementalOutput) {
+            this.isIncrementalOutput = isIncrementalOutput;
+            return this;
+        }
+
+        public Builder setDescriptorSetFile(String descriptorSetFile) {
+            AssertUtils.hasText(descriptorSetFile);
+            this.descriptorSetFile = descriptorSetFile;
+            return this;
+        }
+
+        public Builder setDescriptorSetDependencies(String... descriptorSetDependencies) {
+            AssertUtils.noNullElements(descriptorSetDependencies);
+            this.descriptorSetDependencies = Arrays.asList(descriptorSetDependencies);
+            return this;
+        }
+
+        public Builder setOrdering(ProtoOrdering ordering) {
+            AssertUtils.notNull(ordering);
+            this.ordering = ordering;
+            return this;
+        }
+
         public Builder setExtendsInterface(Class<?> extendsInterface) {
             AssertUtils.notNull(extendsInterface);
-            this.extendsInterface = extendsInterface;
+            this.extendsInterfaces = Collections.singletonList(extendsInterface);
+            return this;
+        }
+
+        public Builder setExtendsInterfaces(Class<?>... extendsInterfaces) {
+            AssertUtils.notEmpty(extendsInterfaces);
+            AssertUtils.noNullElements(extendsInterfaces);
+            this.extendsInterfaces = Arrays.asList(extendsInterfaces);
             return this;
         }
 
@@ -261,6 +608,24 @@ public class ProtoExecutor {
             return this;
         }
 
+        public Builder setExcludePatterns(String... excludePatterns) {
+            AssertUtils.noNullElements(excludePatterns);
+            this.excludePatterns = Arrays.asList(excludePatterns);
+            return this;
+        }
+
+        public Builder setIncludePackages(String... includePackages) {
+            AssertUtils.noNullElements(includePackages);
+            this.includePackages = Arrays.asList(includePackages);
+            return this;
+        }
+
+        public Builder setExcludePackages(String... excludePackages) {
+            AssertUtils.noNullElements(excludePackages);
+            this.excludePackages = Arrays.asList(excludePackages);
+            return this;
+        }
+
         public Builder setComment(Class<? extends Annotation> commentClass, String commentMethodName) {
             AssertUtils.notNull(commentClass);
             AssertUtils.hasText(commentMethodName);
@@ -269,6 +634,33 @@ public class ProtoExecutor {
             return this;
         }
 
+        /**
+         * 映射为内置的基础类型，如 UUID -> BYTES
+         */
+        public Builder addTypeMapping(Class<?> javaType, ProtoFieldType protoFieldType) {
+            AssertUtils.notNull(javaType);
+            AssertUtils.notNull(protoFieldType);
+            this.typeMappings.put(javaType, ProtoTypeMapping.of(protoFieldType));
+            return this;
+        }
+
+        /**
+         * 映射为自定义proto类型，如 Instant -> google.protobuf.Timestamp（导入 google/protobuf/timestamp.proto）
+         *
+         * @param importFile 需要导入的proto文件，不需要时为 null
+         */
+        public Builder addTypeMapping(Class<?> javaType, String protoTypeName, String importFile) {
+            AssertUtils.notNull(javaType);
+            this.typeMappings.put(javaType, ProtoTypeMapping.custom(protoTypeName, importFile));
+            return this;
+        }
+
+        public Builder addTypeMapper(TypeMapper typeMapper) {
+            AssertUtils.notNull(typeMapper);
+            this.typeMappers.add(typeMapper);
+            return this;
+        }
+
         public Builder setGeneratePath(String generatePath) {
             AssertUtils.hasText(generatePath);
             this.generatePath = generatePath;
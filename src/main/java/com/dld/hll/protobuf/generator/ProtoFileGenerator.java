@@ -1,44 +1,212 @@
 package com.dld.hll.protobuf.generator;
 
-import com.dld.hll.protobuf.generator.entity.*;
-import com.dld.hll.protobuf.generator.util.ProtoUtils;
-import com.dld.hll.protobuf.generator.util.StringUtils;
-import lombok.AllArgsConstructor;
+import com.dld.hll.protobuf.generator.util.DigestUtils;
 import lombok.Setter;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.List;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
+ * 由 {@link ProtoTypeTable} 生成proto文件
+ *
  * @author Chen Hui
  */
 @Setter
-@AllArgsConstructor
 public class ProtoFileGenerator {
 
-    private ProtoInfoRegistry registry;
+    private ProtoTypeTable typeTable;
     private File generatePath;
     private String commonProtoFileName;
 
+    /**
+     * 增量生成：只写入内容变化的文件，只删除输出清单中记录的过期文件
+     */
+    private boolean isIncremental;
+
+    /**
+     * 生成proto文件的并发线程数，大于 1 时Common及各服务文件并发生成及写入
+     */
+    private int threads = 1;
+
     private static final String INDENTATION_SPACES = "    ";
-    private static String lineSeparator = "\n";
-    private static String doubleLineSeparator = lineSeparator + lineSeparator;
+    private static final String WRAPPERS_IMPORT = "google/protobuf/wrappers.proto";
+    private static final String lineSeparator = "\n";
+    private static final String doubleLineSeparator = lineSeparator + lineSeparator;
 
 
+    public ProtoFileGenerator(ProtoTypeTable typeTable, File generatePath, String commonProtoFileName) {
+        this.typeTable = typeTable;
+        this.generatePath = generatePath;
+        this.commonProtoFileName = commonProtoFileName;
+    }
+
     /**
      * 生成proto文件
      */
     public void generate() {
+        List<Integer> services = new ArrayList<>(typeTable.getServiceCount());
+        for (int service = 0; service < typeTable.getServiceCount(); service++) {
+            services.add(service);
+        }
+
+        if (isIncremental) {
+            generateIncrementally(services);
+            return;
+        }
+
         prepareGeneratePath(generatePath);
+        writeFiles(null, services);
+    }
+
+    /**
+     * 生成Common及全部服务的proto文件，写入调用方按文件名提供的输出流（如注解处理器的 Filer），不使用生成目录
+     * 输出流由生成器关闭
+     */
+    public void generate(Function<String, OutputStream> outputs) {
+        writeToStream(outputs, getCommonFileName(), this::generateCommon);
+        for (int service = 0; service < typeTable.getServiceCount(); service++) {
+            int current = service;
+            writeToStream(outputs, getServiceFileName(service), buf -> generateService(buf, current));
+        }
+    }
+
+    /**
+     * 增量生成全部proto文件，删除上次生成而本次不再生成的文件
+     */
+    private void generateIncrementally(List<Integer> services) {
+        makeGeneratePath();
+        OutputManifest manifest = OutputManifest.load(generatePath.toPath());
+        Set<String> staleFileNames = manifest.getFileNames();
+
+        writeFiles(manifest, services);
+        staleFileNames.remove(getCommonFileName());
+        for (int service : services) {
+            staleFileNames.remove(getServiceFileName(service));
+        }
+
+        for (String fileName : staleFileNames) {
+            deleteFile(new File(generatePath, fileName));
+            manifest.remove(fileName);
+        }
+        manifest.save();
+    }
+
+    /**
+     * 只重新生成Common及指定服务的proto文件，不清理目录中的其他文件
+     *
+     * @param serviceNames 服务名（接口类名）
+     */
+    public void generate(Collection<String> serviceNames) {
+        makeGeneratePath();
+
+        List<Integer> services = new ArrayList<>(serviceNames.size());
+        for (String serviceName : serviceNames) {
+            services.add(typeTable.getServiceIndex(serviceName));
+        }
+
+        OutputManifest manifest = isIncremental ? OutputManifest.load(generatePath.toPath()) : null;
+        writeFiles(manifest, services);
+        if (manifest != null) {
+            manifest.save();
+        }
+    }
+
+    /**
+     * 删除指定服务的proto文件（服务已不存在）
+     */
+    public void delete(String serviceName) {
+        String fileName = serviceName + ".proto";
+        deleteFile(new File(generatePath, fileName));
+
+        if (isIncremental && generatePath.exists()) {
+            OutputManifest manifest = OutputManifest.load(generatePath.toPath());
+            manifest.remove(fileName);
+            manifest.save();
+        }
+    }
+
+    /**
+     * 生成并写入Common及指定服务的proto文件
+     *
+     * @param manifest 增量生成时的输出清单，为 null 时直接覆盖写入
+     */
+    private void writeFiles(OutputManifest manifest, List<Integer> services) {
+        if (threads > 1 && !services.isEmpty()) {
+            writeFilesConcurrently(manifest, services);
+            return;
+        }
+
+        writeFile(manifest, getCommonFileName(), this::generateCommon);
+        for (int service : services) {
+            writeFile(manifest, getServiceFileName(service), buf -> generateService(buf, service));
+        }
+    }
+
+    /**
+     * 各文件只读取类型表，互不依赖，每个文件作为单独的任务并发生成及写入
+     */
+    private void writeFilesConcurrently(OutputManifest manifest, List<Integer> services) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, services.size() + 1));
+        try {
+            List<Future<?>> futures = new ArrayList<>(services.size() + 1);
+            futures.add(executorService.submit(() ->
+                    writeFile(manifest, getCommonFileName(), this::generateCommon)));
+            for (int service : services) {
+                futures.add(executorService.submit(() ->
+                        writeFile(manifest, getServiceFileName(service), buf -> generateService(buf, service))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void writeFile(OutputManifest manifest, String fileName, Consumer<ProtoFileWriter> content) {
+        if (manifest == null) {
+            writeToFile(fileName, content);
+        } else {
+            writeIfChanged(manifest, fileName, content);
+        }
+    }
+
+    private String getCommonFileName() {
+        return commonProtoFileName + ".proto";
+    }
+
+    private String getServiceFileName(int service) {
+        return typeTable.getServiceName(service) + ".proto";
+    }
 
-        writeToFile(commonProtoFileName + ".proto", generateCommon());
+    private void makeGeneratePath() {
+        if (!generatePath.exists() && !generatePath.mkdirs()) {
+            throw new RuntimeException("Could not make directory -> " + generatePath.getAbsolutePath());
+        }
+    }
 
-        for (ProtoService protoService : registry.getProtoServices()) {
-            writeToFile(protoService.getName() + ".proto", generateService(protoService));
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("File could not be deleted -> " + file.getAbsolutePath());
         }
     }
 
@@ -68,81 +236,69 @@ public class ProtoFileGenerator {
     /**
      * 生成Common proto文件
      */
-    private String generateCommon() {
-        StringBuilder buf = new StringBuilder();
+    private void generateCommon(ProtoFileWriter buf) {
         generateCommonHeader(buf);
 
         // 共同的类
-        for (ProtoObject protoObject : registry.getProtoObjectMap().values()) {
-            if (protoObject.getCitations() > 1) {
-                if (Enum.class.isAssignableFrom(protoObject.getClazz())) {
-                    generateEnum(buf, protoObject);
-                } else {
-                    generateObject(buf, protoObject);
-                }
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isShared(type) && typeTable.getTypeKind(type) != ProtoTypeTable.KIND_GENERIC) {
+                generateObjectOrEnum(buf, type);
             }
         }
 
         // 共同泛型
-        for (ProtoGenericField genericField : registry.getGenericFieldMap().values()) {
-            if (genericField.getCitations() > 1) {
-                generateGenericFieldObject(buf, genericField);
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isShared(type) && typeTable.getTypeKind(type) == ProtoTypeTable.KIND_GENERIC) {
+                generateGenericFieldObject(buf, type);
             }
         }
 
         // 空消息（备用）
         generateEmptyMessage(buf);
-        return buf.toString();
     }
 
     /**
      * 生成单个服务proto文件
      */
-    private String generateService(ProtoService protoService) {
-        StringBuilder buf = new StringBuilder();
-        generateServiceHeader(buf, protoService);
+    private void generateService(ProtoFileWriter buf, int service) {
+        generateServiceHeader(buf, service);
 
-        // 获取要生成的接口相关类
-        Collection<ProtoObject> protoObjects = protoService.getProtoObjectMap().values();
-        generateObjects(buf, protoObjects);
+        // 生成只被当前服务引用的类
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isMember(service, type) && typeTable.getTypeKind(type) != ProtoTypeTable.KIND_GENERIC) {
+                generateObjectOrEnum(buf, type);
+            }
+        }
 
         // 生成内嵌泛型类型
-        for (ProtoGenericField genericField : protoService.getGenericFieldMap().values()) {
-            if (genericField.getCitations() == 1) {
-                generateGenericFieldObject(buf, genericField);
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isMember(service, type) && typeTable.getTypeKind(type) == ProtoTypeTable.KIND_GENERIC) {
+                generateGenericFieldObject(buf, type);
             }
         }
 
         // 生成服务接口描述
-        generateServiceInterface(buf, protoService);
-        return buf.toString();
+        generateServiceInterface(buf, service);
     }
 
-    /**
-     * 生成每个服务的全部proto对象
-     */
-    private void generateObjects(StringBuilder buf, Collection<ProtoObject> protoObjects) {
-        for (ProtoObject protoObject : protoObjects) {
-            if (protoObject.getCitations() == 1) {
-                if (Enum.class.isAssignableFrom(protoObject.getClazz())) {
-                    generateEnum(buf, protoObject);
-                } else {
-                    generateObject(buf, protoObject);
-                }
-            }
+    private void generateObjectOrEnum(ProtoFileWriter buf, int type) {
+        if (typeTable.getTypeKind(type) == ProtoTypeTable.KIND_ENUM) {
+            generateEnum(buf, type);
+        } else {
+            generateObject(buf, type);
         }
     }
 
     /**
      * 生成对象类型
      */
-    private void generateObject(StringBuilder buf, ProtoObject protoObject) {
-        generateCommentWithIndent(buf, protoObject);
-        buf.append("message ").append(protoObject.getClazz().getSimpleName()).append(" {").append(lineSeparator);
+    private void generateObject(ProtoFileWriter buf, int type) {
+        generateComment(buf, typeTable.getTypeComment(type), INDENTATION_SPACES);
+        buf.append("message ").append(typeTable.getTypeName(type)).append(" {").append(lineSeparator);
         int index = 1;
-        index = generateSuperObject(protoObject, buf, index);
-        for (ProtoField protoField : protoObject.getProtoFields()) {
-            generateField(buf, protoField, index++);
+        index = generateSuperObject(type, buf, index);
+        for (int field = typeTable.getFieldStart(type); field < typeTable.getFieldEnd(type); field++) {
+            generateField(buf, field, index++);
         }
         buf.append("}").append(doubleLineSeparator);
     }
@@ -150,13 +306,17 @@ public class ProtoFileGenerator {
     /**
      * 生成对象父类字段
      */
-    private int generateSuperObject(ProtoObject protoObject, StringBuilder buf, int index) {
-        ProtoObject superProtoObject = protoObject.getSuperProtoObject();
-        if (superProtoObject != null) {
-            // 优先生成上层父类
-            index = generateSuperObject(superProtoObject, buf, index);
-            for (ProtoField protoField : superProtoObject.getProtoFields()) {
-                generateField(buf, protoField, index++);
+    private int generateSuperObject(int type, ProtoFileWriter buf, int index) {
+        // 优先生成上层父类
+        Deque<Integer> superTypes = new ArrayDeque<>();
+        for (int superType = typeTable.getSuperType(type); superType != ProtoTypeTable.NONE;
+             superType = typeTable.getSuperType(superType)) {
+            superTypes.push(superType);
+        }
+        while (!superTypes.isEmpty()) {
+            int superType = superTypes.pop();
+            for (int field = typeTable.getFieldStart(superType); field < typeTable.getFieldEnd(superType); field++) {
+                generateField(buf, field, index++);
             }
         }
         return index;
@@ -165,13 +325,13 @@ public class ProtoFileGenerator {
     /**
      * 生成枚举类型
      */
-    private void generateEnum(StringBuilder buf, ProtoObject protoEnum) {
-        generateComment(buf, protoEnum);
-        buf.append("enum ").append(protoEnum.getClazz().getSimpleName()).append(" {").append(lineSeparator);
+    private void generateEnum(ProtoFileWriter buf, int type) {
+        generateComment(buf, typeTable.getTypeComment(type), null);
+        buf.append("enum ").append(typeTable.getTypeName(type)).append(" {").append(lineSeparator);
         buf.append(INDENTATION_SPACES).append("UNSPECIFIED = 0;").append(lineSeparator);
         int index = 1;
-        for (ProtoField protoField : protoEnum.getProtoFields()) {
-            generateEnumField(buf, protoField, index++);
+        for (int field = typeTable.getFieldStart(type); field < typeTable.getFieldEnd(type); field++) {
+            generateEnumField(buf, field, index++);
         }
         buf.append("}").append(doubleLineSeparator);
     }
@@ -179,157 +339,125 @@ public class ProtoFileGenerator {
     /**
      * 生成方法
      */
-    private void generateMethod(StringBuilder buf, ProtoMethod protoMethod) {
-        generateCommentWithIndent(buf, protoMethod);
-        buf.append(INDENTATION_SPACES).append("rpc ").append(protoMethod.getName())
-                .append(" (").append(protoMethod.getParameterTypeName()).append(") ")
-                .append("returns (").append(protoMethod.getReturnTypeName()).append(");").append(lineSeparator);
+    private void generateMethod(ProtoFileWriter buf, int method) {
+        generateComment(buf, typeTable.getMethodComment(method), INDENTATION_SPACES);
+        buf.append(INDENTATION_SPACES).append("rpc ").append(typeTable.getMethodName(method))
+                .append(" (").append(getMessageName(typeTable.getMethodParameter(method))).append(") ")
+                .append("returns (").append(getMessageName(typeTable.getMethodReturn(method))).append(");")
+                .append(lineSeparator);
     }
 
     /**
      * 生成字段
      */
-    private void generateField(StringBuilder buf, ProtoField protoField, int index) {
-        generateCommentWithIndent(buf, protoField);
+    private void generateField(ProtoFileWriter buf, int field, int index) {
+        generateComment(buf, typeTable.getFieldComment(field), INDENTATION_SPACES);
         buf.append(INDENTATION_SPACES);
-        if (ProtoUtils.isNotGeneric(protoField.getFieldType())) {
-            buf.append(protoField.getTypeName());
-        } else {
-            generateGenericField(buf, protoField.getGeneric());
-        }
-        buf.append(" ").append(protoField.getName());
+        generateFieldType(buf, typeTable.getFieldLabel(field), typeTable.getFieldKey(field),
+                typeTable.getFieldValue(field));
+        buf.append(" ").append(typeTable.getFieldName(field));
         buf.append(" = ").append(index).append(";").append(lineSeparator);
     }
 
     /**
      * 生成枚举字段
      */
-    private void generateEnumField(StringBuilder buf, ProtoField protoField, int index) {
-        generateCommentWithIndent(buf, protoField);
-        buf.append(INDENTATION_SPACES).append(protoField.getName());
+    private void generateEnumField(ProtoFileWriter buf, int field, int index) {
+        generateComment(buf, typeTable.getFieldComment(field), INDENTATION_SPACES);
+        buf.append(INDENTATION_SPACES).append(typeTable.getFieldName(field));
         buf.append(" = ").append(index).append(";").append(lineSeparator);
     }
 
     /**
      * 生成泛型内嵌对象
      */
-    private void generateGenericFieldObject(StringBuilder buf, ProtoGenericField genericField) {
-        String typeName = genericField.getTypeName();
-        buf.append("message ").append(typeName).append(" {").append(lineSeparator);
+    private void generateGenericFieldObject(ProtoFileWriter buf, int type) {
+        buf.append("message ").append(typeTable.getTypeName(type)).append(" {").append(lineSeparator);
         buf.append(INDENTATION_SPACES);
-        generateGenericField(buf, genericField);
-        buf.append(" ").append(StringUtils.uncapitalize(typeName));
+        generateFieldType(buf, typeTable.getTypeLabel(type), typeTable.getTypeKey(type), typeTable.getTypeValue(type));
+        buf.append(" ").append(typeTable.getGenericFieldName(type));
         buf.append(" = ").append(1).append(";").append(lineSeparator);
         buf.append("}").append(doubleLineSeparator);
     }
 
     /**
-     * 生成泛型字段
-     */
-    private void generateGenericField(StringBuilder buf, ProtoGenericField genericField) {
-        if (ProtoUtils.isCollection(genericField.getType().getRawType())) {
-            generateCollectionGenericField(buf, genericField);
-        } else if (ProtoUtils.isMap(genericField.getType().getRawType())) {
-            generateMapGenericField(buf, genericField);
-        }
-    }
-
-    /**
-     * 生成 Collection 泛型字段
+     * 生成字段类型（一般类型、Collection 泛型或 Map 泛型）
      */
-    private void generateCollectionGenericField(StringBuilder buf, ProtoGenericField genericField) {
-        buf.append("repeated ");
-        if (genericField.isNotGeneric()) {
-            buf.append(ProtoUtils.getTypeName(genericField.getParameterTypes().get(0),
-                    genericField.getProtoFieldTypes().get(0)));
+    private void generateFieldType(ProtoFileWriter buf, byte label, int key, int value) {
+        if (label == ProtoTypeTable.LABEL_REPEATED) {
+            buf.append("repeated ").append(typeTable.getRefName(value));
+        } else if (label == ProtoTypeTable.LABEL_MAP) {
+            buf.append("map<").append(typeTable.getRefName(key)).append(", ")
+                    .append(typeTable.getRefName(value)).append(">");
         } else {
-            buf.append(genericField.getNestedGeneric().getTypeName());
+            buf.append(typeTable.getRefName(value));
         }
     }
 
-    /**
-     * 生成 Map 泛型字段
-     */
-    private void generateMapGenericField(StringBuilder buf, ProtoGenericField genericField) {
-        List<Class<?>> parameterTypes = genericField.getParameterTypes();
-        List<ProtoFieldType> protoFieldTypes = genericField.getProtoFieldTypes();
-        buf.append("map<");
-        if (genericField.isNotGeneric()) {
-            buf.append(ProtoUtils.getTypeName(parameterTypes.get(0), protoFieldTypes.get(0)));
-            buf.append(", ");
-            buf.append(ProtoUtils.getTypeName(parameterTypes.get(1), protoFieldTypes.get(1)));
-        } else {
-            buf.append(ProtoUtils.getTypeName(parameterTypes.get(0), protoFieldTypes.get(0)));
-            buf.append(", ");
-            buf.append(genericField.getNestedGeneric().getTypeName());
-        }
-        buf.append(">");
-    }
-
     /**
      * 生成Common头
      */
-    private void generateCommonHeader(StringBuilder buf) {
+    private void generateCommonHeader(ProtoFileWriter buf) {
         buf.append("syntax = \"proto3\";").append(doubleLineSeparator);
         buf.append("option java_multiple_files = true;").append(lineSeparator);
         buf.append("option java_package = \"").append(getCommonPackagePath()).append(".grpc\";").append(lineSeparator);
         buf.append("option java_outer_classname = \"").append(commonProtoFileName).append("Class\";")
-                .append(doubleLineSeparator);
+                .append(lineSeparator);
+        generateImports(buf, typeTable.getCommonImports(), null);
+        buf.append(lineSeparator);
     }
 
     /**
      * 生成服务头
      */
-    private void generateServiceHeader(StringBuilder buf, ProtoService protoService) {
+    private void generateServiceHeader(ProtoFileWriter buf, int service) {
         buf.append("syntax = \"proto3\";").append(doubleLineSeparator);
         buf.append("option java_multiple_files = true;").append(lineSeparator);
-        String packagePath = protoService.getServiceClass().getPackage().getName();
+        String packagePath = typeTable.getServicePackage(service);
         buf.append("option java_package = \"").append(packagePath).append(".grpc\";").append(lineSeparator);
-        buf.append("option java_outer_classname = \"").append(protoService.getServiceClass().getSimpleName())
+        buf.append("option java_outer_classname = \"").append(typeTable.getServiceName(service))
                 .append("Class\";").append(lineSeparator);
         buf.append("import \"").append(commonProtoFileName).append(".proto\";").append(lineSeparator);
-        buf.append("import \"google/protobuf/wrappers.proto\";").append(doubleLineSeparator);
-    }
-
-    /**
-     * 生成空消息
-     */
-    private void generateEmptyMessage(StringBuilder buf) {
-        buf.append("message Empty {").append(lineSeparator).append("}").append(lineSeparator);
+        buf.append("import \"").append(WRAPPERS_IMPORT).append("\";").append(lineSeparator);
+        generateImports(buf, typeTable.getServiceImports(service), WRAPPERS_IMPORT);
+        buf.append(lineSeparator);
     }
 
     /**
-     * 生成服务接口描述
+     * 生成文件中的类型需要的自定义类型映射导入，跳过已导入的文件
      */
-    private void generateServiceInterface(StringBuilder buf, ProtoService protoService) {
-        generateComment(buf, protoService);
-        buf.append("service ").append(protoService.getServiceClass().getSimpleName()).append(" {").append(lineSeparator);
-        for (ProtoMethod protoMethod : protoService.getProtoMethods()) {
-            generateMethod(buf, protoMethod);
+    private void generateImports(ProtoFileWriter buf, List<String> importFiles, String importedFile) {
+        for (String importFile : importFiles) {
+            if (importFile.equals(importedFile)) {
+                continue;
+            }
+            buf.append("import \"").append(importFile).append("\";").append(lineSeparator);
         }
-        buf.append("}").append(lineSeparator);
     }
 
     /**
-     * 生成注释
+     * 生成空消息
      */
-    private <T extends ProtoCommentSupport> void generateComment(StringBuilder buf, T protoElement) {
-        generateCommentWithIndent(buf, protoElement, null);
+    private void generateEmptyMessage(ProtoFileWriter buf) {
+        buf.append("message Empty {").append(lineSeparator).append("}").append(lineSeparator);
     }
 
     /**
-     * 生成带缩进的注释
+     * 生成服务接口描述
      */
-    private <T extends ProtoCommentSupport> void generateCommentWithIndent(StringBuilder buf, T protoElement) {
-        generateCommentWithIndent(buf, protoElement, INDENTATION_SPACES);
+    private void generateServiceInterface(ProtoFileWriter buf, int service) {
+        generateComment(buf, typeTable.getServiceComment(service), null);
+        buf.append("service ").append(typeTable.getServiceName(service)).append(" {").append(lineSeparator);
+        for (int method = typeTable.getMethodStart(service); method < typeTable.getMethodEnd(service); method++) {
+            generateMethod(buf, method);
+        }
+        buf.append("}").append(lineSeparator);
     }
 
     /**
      * 生成指定缩进内容的注释
      */
-    private <T extends ProtoCommentSupport> void generateCommentWithIndent(
-            StringBuilder buf, T protoElement, String prefix) {
-        String description = protoElement.getComment();
+    private void generateComment(ProtoFileWriter buf, String description, String prefix) {
         if (description != null) {
             if (prefix != null) {
                 buf.append(prefix);
@@ -338,18 +466,77 @@ public class ProtoFileGenerator {
         }
     }
 
+    /**
+     * 方法参数或返回值的消息名称，没有时为 Empty
+     */
+    private String getMessageName(int type) {
+        return type == ProtoTypeTable.NONE ? "Empty" : typeTable.getTypeName(type);
+    }
+
     private String getCommonPackagePath() {
-        ProtoService protoService = registry.getProtoServices().get(0);
-        return protoService.getServiceClass().getPackage().getName();
+        return typeTable.getServicePackage(0);
+    }
+
+    private void writeToFile(String fileName, Consumer<ProtoFileWriter> content) {
+        try (ProtoFileWriter writer = new ProtoFileWriter(generatePath.toPath().resolve(fileName), false)) {
+            content.accept(writer);
+        }
     }
 
-    private void writeToFile(String fileName, String content) {
-        File file = new File(generatePath, fileName);
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            writer.write(content);
+    private void writeToStream(Function<String, OutputStream> outputs, String fileName,
+                               Consumer<ProtoFileWriter> content) {
+        try (ProtoFileWriter writer = new ProtoFileWriter(Channels.newChannel(outputs.apply(fileName)), false)) {
+            content.accept(writer);
+        }
+    }
+
+    /**
+     * 先写入同目录的临时文件并计算摘要，与磁盘上的文件相同时丢弃临时文件，否则原子替换，并记录到输出清单
+     * 磁盘上的文件先与输出清单中的记录比较：大小及修改时间与记录一致时只比较记录的摘要，
+     * 没有记录或文件已被修改时才读取文件计算摘要
+     * 临时文件与目标文件同目录，保证可以原子替换，权限与直接写入时一致；每次写入使用不同的临时文件，
+     * 多个执行器同时生成到同一目录时互不覆盖
+     */
+    private void writeIfChanged(OutputManifest manifest, String fileName, Consumer<ProtoFileWriter> content) {
+        Path file = generatePath.toPath().resolve(fileName);
+        Path tempFile = OutputManifest.getTempFile(file);
+        ProtoFileWriter writer;
+        try {
+            writer = new ProtoFileWriter(FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE), true);
         } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]");
+            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+        }
+        try {
+            try {
+                content.accept(writer);
+            } finally {
+                writer.close();
+            }
+            if (!isSameContent(manifest, fileName, file, writer.getHash())) {
+                OutputManifest.moveAtomically(tempFile, file);
+            }
+            manifest.put(fileName, writer.getHash(), Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                throw new RuntimeException("File could not be deleted -> " + tempFile, e);
+            }
+        }
+    }
+
+    /**
+     * 磁盘上的文件内容是否与摘要一致
+     */
+    private boolean isSameContent(OutputManifest manifest, String fileName, Path file, String hash)
+            throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
         }
+        String recordedHash = manifest.getHash(fileName, Files.readAttributes(file, BasicFileAttributes.class));
+        return hash.equals(recordedHash != null ? recordedHash : DigestUtils.sha256Hex(file));
     }
 }
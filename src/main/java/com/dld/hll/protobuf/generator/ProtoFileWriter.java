@@ -0,0 +1,177 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.util.DigestUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * 流式写入proto文件，内容按 UTF-8 编码到缓冲区，缓冲区满时写入文件通道，内存占用与文件大小无关
+ * 缓冲区按线程复用，同一线程同时只能打开一个写入器
+ *
+ * @author Chen Hui
+ */
+public class ProtoFileWriter implements Appendable, Closeable {
+
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 32 * 1024;
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+
+    /**
+     * 写入内容的摘要，不需要时为 null
+     */
+    private final MessageDigest digest;
+    private String hash;
+
+
+    /**
+     * @param isDigest 是否同时计算写入内容的 SHA-256 摘要
+     */
+    public ProtoFileWriter(Path file, boolean isDigest) {
+        this(openChannel(file), isDigest);
+    }
+
+    /**
+     * 写入调用方提供的通道（如注解处理器 Filer 创建的文件），关闭时同时关闭通道
+     *
+     * @param isDigest 是否同时计算写入内容的 SHA-256 摘要
+     */
+    public ProtoFileWriter(WritableByteChannel channel, boolean isDigest) {
+        this.channel = channel;
+        Buffers buffers = BUFFERS.get();
+        this.encoder = buffers.encoder.reset();
+        this.chars = buffers.chars;
+        this.bytes = buffers.bytes;
+        this.chars.clear();
+        this.bytes.clear();
+        this.digest = isDigest ? DigestUtils.newSha256() : null;
+    }
+
+    @Override
+    public ProtoFileWriter append(CharSequence csq) {
+        String str = String.valueOf(csq);
+        for (int start = 0, length = str.length(); start < length; ) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int end = Math.min(length, start + chars.remaining());
+            chars.put(str, start, end);
+            start = end;
+        }
+        return this;
+    }
+
+    @Override
+    public ProtoFileWriter append(CharSequence csq, int start, int end) {
+        return append(String.valueOf(csq).substring(start, end));
+    }
+
+    @Override
+    public ProtoFileWriter append(char c) {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    public ProtoFileWriter append(int i) {
+        return append(Integer.toString(i));
+    }
+
+    private static FileChannel openChannel(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+        }
+    }
+
+    /**
+     * @return 已写入内容的摘要（十六进制），只能在关闭后调用
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public void close() {
+        try {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                flush();
+            }
+            flush();
+            if (digest != null) {
+                hash = DigestUtils.toHex(digest.digest());
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+            }
+        }
+    }
+
+    /**
+     * 编码字符缓冲区中的内容，不完整的代理对保留到下次编码
+     */
+    private void encode(boolean isEndOfInput) {
+        chars.flip();
+        CoderResult result;
+        while ((result = encoder.encode(chars, bytes, isEndOfInput)).isOverflow()) {
+            flush();
+        }
+        chars.compact();
+        if (result.isError()) {
+            throw new RuntimeException("Could not encode proto file content [" + result + "]");
+        }
+    }
+
+    private void flush() {
+        bytes.flip();
+        if (digest != null) {
+            bytes.mark();
+            digest.update(bytes);
+            bytes.reset();
+        }
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * 线程复用的编码器及缓冲区
+     */
+    private static final class Buffers {
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+    }
+}
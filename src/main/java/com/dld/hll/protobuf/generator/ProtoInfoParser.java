@@ -1,48 +1,83 @@
 package com.dld.hll.protobuf.generator;
 
+import com.dld.hll.protobuf.generator.ClassMetadata.FieldMetadata;
 import com.dld.hll.protobuf.generator.entity.*;
-import com.dld.hll.protobuf.generator.util.ProtoUtils;
 
 import java.lang.reflect.*;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
+ * 解析服务接口类中的对象及泛型，引用次数由 {@link ProtoCitationAnalyzer} 在全部服务解析完成后计算
+ * 对象先以空壳放入注册表再解析，每个类只解析一次，循环引用直接复用空壳
+ * 空壳放入待解析队列后逐个解析（不递归），类型图的深度只受堆内存限制
+ * 多个解析器可以共用同一个注册表并发解析
+ *
  * @author Chen Hui
  */
 public class ProtoInfoParser {
 
     private ProtoInfoRegistry registry;
+    private ProtoContext context;
     private ProtoService currentService;
 
+    /**
+     * 已放入注册表、待解析的对象（ProtoObject）及泛型（ProtoGenericField）
+     */
+    private Deque<Object> pending = new ArrayDeque<>();
 
-    public ProtoInfoParser(ProtoInfoRegistry registry) {
+
+    public ProtoInfoParser(ProtoInfoRegistry registry, ProtoContext context) {
         this.registry = registry;
+        this.context = context;
     }
 
     /**
-     * 解析服务接口类
+     * 解析服务接口类并注册
      */
     public void parseService(Class<?> serviceClass) {
+        ProtoService protoService = parse(serviceClass);
+        if (protoService != null) {
+            registry.register(protoService);
+        }
+    }
+
+    /**
+     * 解析服务接口类，由调用方注册
+     *
+     * @return 不包含方法时返回 null
+     */
+    public ProtoService parse(Class<?> serviceClass) {
         if (!isContainsMethods(serviceClass)) {
-            return;
+            return null;
         }
 
         currentService = new ProtoService(serviceClass);
+        currentService.setComment(context.getComment(serviceClass));
         parseCurrentServiceMethods();
-        registry.register(currentService);
+        parsePending();
+        return currentService;
+    }
+
+    /**
+     * 稳定顺序时方法及字段按类文件中的声明顺序解析，字段编号与声明顺序一致
+     */
+    private boolean isDeclarationOrder() {
+        return context.getOrdering().isStable();
     }
 
     private boolean isContainsMethods(Class<?> clazz) {
-        return clazz.getDeclaredMethods().length != 0;
+        return !ClassMetadata.of(clazz).getDeclaredMethods().isEmpty();
     }
 
     /**
      * 解析接口类中全部方法
      */
     private void parseCurrentServiceMethods() {
-        List<ProtoMethod> protoMethods = Arrays.stream(currentService.getServiceClass().getDeclaredMethods())
+        List<ProtoMethod> protoMethods = ClassMetadata.of(currentService.getServiceClass())
+                .getDeclaredMethods(isDeclarationOrder()).stream()
                 .map(this::parseMethod)
                 .collect(Collectors.toList());
         currentService.setProtoMethods(protoMethods);
@@ -58,6 +93,7 @@ public class ProtoInfoParser {
         }
 
         ProtoMethod protoMethod = new ProtoMethod(method);
+        protoMethod.setComment(context.getComment(method));
         parseMethodParameterType(protoMethod);
         parseMethodReturnType(protoMethod);
         return protoMethod;
@@ -88,30 +124,47 @@ public class ProtoInfoParser {
         }
     }
 
+    /**
+     * 解析队列中的全部对象及泛型，解析过程中新发现的类型继续放入队列
+     */
+    private void parsePending() {
+        while (!pending.isEmpty()) {
+            Object node = pending.pop();
+            if (node instanceof ProtoObject) {
+                doParseObject((ProtoObject) node);
+            } else {
+                doParseFieldGeneric((ProtoGenericField) node);
+            }
+        }
+    }
+
     private ProtoObject parseObject(Class<?> clazz) {
         return parseObjectOrEnum(clazz, ProtoFieldType.OBJECT);
     }
 
+    /**
+     * 只有放入注册表成功的解析器解析该类，其他解析器直接使用（可能尚未解析完成的）缓存对象
+     * 枚举直接解析，对象放入待解析队列
+     */
     private ProtoObject parseObjectOrEnum(Class<?> clazz, ProtoFieldType pfType) {
-        ProtoObject protoObject = registry.getFormParsingOrCache(clazz);
+        ProtoObject protoObject = registry.getCache(clazz);
         if (protoObject != null) {
-            increaseObjectCitations(protoObject);
             return protoObject;
         }
 
         protoObject = new ProtoObject(clazz);
-        registry.addParsing(clazz, protoObject);
+        protoObject.setComment(context.getComment(clazz));
+        ProtoObject existing = registry.addCacheIfAbsent(clazz, protoObject);
+        if (existing != null) {
+            return existing;
+        }
         if (pfType == ProtoFieldType.OBJECT) {
-            doParseObject(protoObject);
+            pending.push(protoObject);
         } else if (pfType == ProtoFieldType.ENUM) {
             doParseEnum(protoObject);
         } else {
             throw new RuntimeException("PFType must be ProtoFieldType.OBJECT or ProtoFieldType.ENUM");
         }
-        registry.addCache(clazz, protoObject);
-        registry.removeParsing(clazz);
-
-        currentService.addParsed(clazz, protoObject);
         return protoObject;
     }
 
@@ -119,15 +172,16 @@ public class ProtoInfoParser {
      * 解析接口中的类
      */
     private void doParseObject(ProtoObject protoObject) {
+        ClassMetadata metadata = ClassMetadata.of(protoObject.getClazz());
+
         // 解析父类
-        Class<?> superClass = protoObject.getClazz().getSuperclass();
-        if (superClass != null && superClass != Object.class) {
-            ProtoObject superPO = parseObject(superClass);
+        if (metadata.getSuperclass() != null) {
+            ProtoObject superPO = parseObject(metadata.getSuperclass());
             protoObject.setSuperProtoObject(superPO);
         }
 
         // 解析类字段
-        List<ProtoField> protoFields = Arrays.stream(protoObject.getClazz().getDeclaredFields())
+        List<ProtoField> protoFields = metadata.getDeclaredFields(isDeclarationOrder()).stream()
                 .map(this::parseField)
                 .collect(Collectors.toList());
         protoObject.setProtoFields(protoFields);
@@ -137,8 +191,9 @@ public class ProtoInfoParser {
      * 解析枚举类（无需解析）
      */
     private void doParseEnum(ProtoObject protoObject) {
-        List<ProtoField> protoFields = Arrays.stream(protoObject.getClazz().getFields())
-                .map(ProtoField::new)
+        List<ProtoField> protoFields = ClassMetadata.of(protoObject.getClazz())
+                .getPublicFields(isDeclarationOrder()).stream()
+                .map(this::newProtoField)
                 .collect(Collectors.toList());
         protoObject.setProtoFields(protoFields);
     }
@@ -146,66 +201,55 @@ public class ProtoInfoParser {
     /**
      * 解析类字段
      */
-    private ProtoField parseField(Field field) {
-        ProtoField protoField = new ProtoField(field);
-        Class<?> fieldType = field.getType();
+    private ProtoField parseField(FieldMetadata fieldMetadata) {
+        ProtoField protoField = newProtoField(fieldMetadata.getField());
 
         // 解析字段类型，或泛型类型
-        if (ProtoUtils.isNotGeneric(fieldType)) {
+        if (!fieldMetadata.isGeneric()) {
             // 解析字段类型
-            ProtoFieldType pfType = ProtoUtils.getProtoFieldType(fieldType);
-            protoField.setProtoFieldType(pfType);
+            ProtoTypeMapping typeMapping = context.getTypeMapping(fieldMetadata.getType());
+            protoField.setTypeMapping(typeMapping);
 
             // 解析非基础类型字段
-            if (pfType == ProtoFieldType.OBJECT || pfType == ProtoFieldType.ENUM) {
-                ProtoObject fieldPO = parseObjectOrEnum(fieldType, pfType);
+            if (typeMapping.isObjectOrEnum()) {
+                ProtoObject fieldPO = parseObjectOrEnum(fieldMetadata.getType(), typeMapping.getProtoFieldType());
                 protoField.setProtoObject(fieldPO);
             }
         } else {
-            ProtoGenericField genericField = parseGenericField(field);
+            ProtoGenericField genericField = parseGenericField(fieldMetadata);
             protoField.setGeneric(genericField);
         }
         return protoField;
     }
 
-    private ProtoGenericField parseGenericField(Field genericField) {
-        Type genericType = genericField.getGenericType();
-        validateGenericField(genericField, genericType);
-        return parseGenericField(genericField, genericType, true);
+    private ProtoField newProtoField(Field field) {
+        ProtoField protoField = new ProtoField(field);
+        protoField.setComment(context.getComment(field));
+        return protoField;
+    }
+
+    private ProtoGenericField parseGenericField(FieldMetadata fieldMetadata) {
+        Type genericType = fieldMetadata.getGenericType();
+        validateGenericField(fieldMetadata.getField(), genericType);
+        GenericTypeKey typeKey = registry.getGenericTypeKeyTable().getKey((ParameterizedType) genericType);
+        return parseGenericField(fieldMetadata.getField(), typeKey);
     }
 
     /**
-     * 解析范型（缓存）
-     *
-     * @param isOutermost 是否是最外层泛型解析
+     * 解析范型（按规范键缓存）
      */
-    private ProtoGenericField parseGenericField(Field field, Type type, boolean isOutermost) {
-        if (registry.isParsing(type)) {
-            ProtoGenericField genericField = registry.getParsing(type);
-            increaseNestedGenericCitations(genericField);
-            return genericField;
-        }
-
-        ProtoGenericField genericField = registry.getCache(type);
+    private ProtoGenericField parseGenericField(Field field, GenericTypeKey typeKey) {
+        ProtoGenericField genericField = registry.getCache(typeKey);
         if (genericField != null) {
-            if (isOutermost) {
-                increaseOutermostGenericCitations(genericField);
-            } else {
-                currentService.addParsed(type, genericField);
-                increaseNestedGenericCitations(genericField);
-            }
             return genericField;
         }
 
-        genericField = new ProtoGenericField(field, (ParameterizedType) type, isOutermost ? 0 : 1);
-        registry.addParsing(type, genericField);
-        doParseFieldGeneric(genericField);
-        registry.addCache(type, genericField);
-        registry.removeParsing(type);
-
-        if (!isOutermost) {
-            currentService.addParsed(type, genericField);
+        genericField = new ProtoGenericField(field, typeKey, registry.getGenericNameTable().getTypeName(typeKey));
+        ProtoGenericField existing = registry.addCacheIfAbsent(typeKey, genericField);
+        if (existing != null) {
+            return existing;
         }
+        pending.push(genericField);
         return genericField;
     }
 
@@ -213,95 +257,52 @@ public class ProtoInfoParser {
      * 解析范型
      */
     private void doParseFieldGeneric(ProtoGenericField genericField) {
-        Type[] paramTypes = genericField.getType().getActualTypeArguments();
-        for (Type paramType : paramTypes) {
+        for (Object argument : genericField.getTypeKey().getArguments()) {
             // 解析非泛型
-            if (paramType instanceof Class) {
-                Class<?> paramClass = (Class<?>) paramType;
+            if (argument instanceof Class) {
+                Class<?> paramClass = (Class<?>) argument;
                 genericField.addParameterType(paramClass);
-                ProtoFieldType pfType = ProtoUtils.getProtoFieldType(paramClass);
-                genericField.addProtoFieldType(pfType);
+                ProtoTypeMapping typeMapping = context.getTypeMapping(paramClass);
+                genericField.addTypeMapping(typeMapping);
 
                 // 如果是非一般数据类型，则进一步解析
-                if (pfType == ProtoFieldType.ENUM || pfType == ProtoFieldType.OBJECT) {
-                    ProtoObject protoObject = parseObjectOrEnum(paramClass, pfType);
+                if (typeMapping.isObjectOrEnum()) {
+                    ProtoObject protoObject = parseObjectOrEnum(paramClass, typeMapping.getProtoFieldType());
                     genericField.addProtoObject(protoObject);
                 }
             }
             // 解析嵌套范型
             else {
-                ProtoGenericField nestedGenericField = parseGenericField(genericField.getField(), paramType, false);
+                ProtoGenericField nestedGenericField = parseGenericField(genericField.getField(),
+                        (GenericTypeKey) argument);
                 genericField.setNestedGeneric(nestedGenericField);
             }
         }
     }
 
-    private void validateGenericField(Field genericField, Type type) {
-        // No:  List list = ...;  or  Map map = ...;
-        if (!(type instanceof ParameterizedType)) {
-            throw new RuntimeException("No parameter type is specified in generic field[" +
-                    genericField.getName() + "] of Class[" + genericField.getDeclaringClass().getName() + "].");
-        }
-
-        // No:  List<?> list = ...;  or  Map<?, ?> map = ...;
-        if (type instanceof WildcardType) {
-            throw new RuntimeException("Wildcard is not support for generic field type in field[" +
-                    genericField.getName() + "] of Class[" + genericField.getDeclaringClass().getName() + "].");
-        }
-
-        Type[] paramTypes = ((ParameterizedType) type).getActualTypeArguments();
-        for (Type paramType : paramTypes) {
-            if (!(paramType instanceof Class)) {
-                validateGenericField(genericField, paramType);
+    private void validateGenericField(Field genericField, Type genericType) {
+        Deque<Type> types = new ArrayDeque<>();
+        types.push(genericType);
+        while (!types.isEmpty()) {
+            Type type = types.pop();
+            // No:  List list = ...;  or  Map map = ...;
+            if (!(type instanceof ParameterizedType)) {
+                throw new RuntimeException("No parameter type is specified in generic field[" +
+                        genericField.getName() + "] of Class[" + genericField.getDeclaringClass().getName() + "].");
             }
-        }
-    }
-
-    /**
-     * 增加对象引用次数
-     */
-    public void increaseObjectCitations(ProtoObject protoObject) {
-        if (!isExistsInCurrentService(protoObject.getClazz())) {
-            ProtoUtils.increaseCitations(protoObject);
-        }
-    }
 
-    /**
-     * 增加最外层泛型引用次数
-     */
-    public void increaseOutermostGenericCitations(ProtoGenericField genericField) {
-        // 最外层，且缓存不存在于当前解析Service中，则增加泛型内嵌泛型或者类引用次数
-        if (!isExistsInCurrentService(genericField.getType())) {
-            for (ProtoObject protoObject : genericField.getProtoObjects()) {
-                ProtoUtils.increaseCitations(protoObject);
+            // No:  List<?> list = ...;  or  Map<?, ?> map = ...;
+            if (type instanceof WildcardType) {
+                throw new RuntimeException("Wildcard is not support for generic field type in field[" +
+                        genericField.getName() + "] of Class[" + genericField.getDeclaringClass().getName() + "].");
             }
-            if (genericField.getNestedGeneric() != null) {
-                ProtoUtils.increaseCitations(genericField.getNestedGeneric());
-            }
-        }
-    }
 
-    /**
-     * 增加内嵌泛型的引用次数
-     */
-    public void increaseNestedGenericCitations(ProtoGenericField genericField) {
-        // 缓存是否存在于当前解析Service
-        if (isExistsInCurrentService(genericField.getType())) {
-            // 存在，且泛型之前是最外层，则设置泛型为内层
-            if (genericField.getCitations() == 0) {
-                genericField.setCitations(1);
+            Type[] paramTypes = ((ParameterizedType) type).getActualTypeArguments();
+            for (Type paramType : paramTypes) {
+                if (!(paramType instanceof Class)) {
+                    types.push(paramType);
+                }
             }
-        } else {
-            // 不存在，则泛型类及其内嵌泛型或者类引用次数均需要增加
-            ProtoUtils.increaseCitations(genericField);
         }
     }
-
-    public boolean isExistsInCurrentService(Class<?> clazz) {
-        return currentService.isExists(clazz) || registry.isParsing(clazz);
-    }
-
-    public boolean isExistsInCurrentService(Type type) {
-        return currentService.isExists(type) || registry.isParsing(type);
-    }
 }
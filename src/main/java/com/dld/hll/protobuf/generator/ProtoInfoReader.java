@@ -1,25 +1,195 @@
 package com.dld.hll.protobuf.generator;
 
+import com.dld.hll.protobuf.generator.entity.ProtoService;
+import com.dld.hll.protobuf.generator.scanner.ProtoInfoScanner;
 import com.dld.hll.protobuf.generator.util.AssertUtils;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
+ * 解析全部服务接口并构建类型表
+ *
+ * 内存：引用次数及类型归属（Common或服务文件）取决于全部服务，类型表只能在全部服务解析完成后构建，
+ * 解析期间完整的对象图（ProtoObject、ProtoField、ProtoGenericField 及其持有的 Class、Field、Method）都在内存中，
+ * 峰值内存仍随对象图增长；构建完成后释放对象图，之后的生成及监听阶段只持有紧凑的类型表
+ *
  * @author Chen Hui
  */
 @Setter
 public class ProtoInfoReader {
 
     private ProtoInfoRegistry registry;
+    private ProtoContext context = new ProtoContext();
+
+    /**
+     * 解析服务接口的并发线程数，大于 1 时并发解析
+     */
+    private int threads = 1;
+
+    /**
+     * 类型表构建完成、对象图释放之前回调全部服务（如监听模式记录服务引用的类），可以为 null
+     */
+    private Consumer<List<ProtoService>> serviceHandler;
 
 
     public void load(List<Class<?>> serviceClasses) {
         AssertUtils.isTrue(serviceClasses != null && serviceClasses.size() > 0,
                 "don't found any service interface");
-        ProtoInfoParser protoInfoParser = new ProtoInfoParser(registry);
-        for (Class<?> clazz : serviceClasses) {
-            protoInfoParser.parseService(clazz);
+        if (threads > 1 && serviceClasses.size() > 1) {
+            loadConcurrently(serviceClasses);
+        } else {
+            ProtoInfoParser protoInfoParser = new ProtoInfoParser(registry, context);
+            for (Class<?> clazz : serviceClasses) {
+                protoInfoParser.parseService(clazz);
+            }
+        }
+        buildTypeTable();
+    }
+
+    /**
+     * 全部服务解析完成后计算引用次数并构建类型表，稳定顺序时服务按接口全名排序
+     * 构建完成后释放注册表中的对象图，之后只能使用类型表
+     */
+    private void buildTypeTable() {
+        ProtoOrdering ordering = context.getOrdering();
+        if (ordering.isStable()) {
+            registry.getProtoServices().sort(Comparator.comparing(protoService ->
+                    protoService.getServiceClass().getName()));
+        }
+        ProtoCitationAnalyzer analyzer = new ProtoCitationAnalyzer(ordering == ProtoOrdering.TOPOLOGICAL);
+        registry.setTypeTable(analyzer.analyze(registry.getProtoServices()));
+        if (serviceHandler != null) {
+            serviceHandler.accept(Collections.unmodifiableList(registry.getProtoServices()));
+        }
+        registry.release();
+    }
+
+    /**
+     * 每个服务接口使用单独的解析器并发解析，按扫描顺序注册
+     */
+    private void loadConcurrently(List<Class<?>> serviceClasses) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, serviceClasses.size()));
+        try {
+            List<Future<ProtoService>> futures = new ArrayList<>(serviceClasses.size());
+            for (Class<?> clazz : serviceClasses) {
+                futures.add(executorService.submit(() ->
+                        new ProtoInfoParser(registry, context).parse(clazz)));
+            }
+            for (Future<ProtoService> future : futures) {
+                ProtoService protoService = future.get();
+                if (protoService != null) {
+                    registry.register(protoService);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 流水线模式：扫描线程边扫描边将服务接口放入有界队列，解析线程同时从队列中取出解析
+     * 队列满时扫描线程等待，未解析的服务接口不会堆积；解析结果按扫描顺序注册
+     * 类型的引用次数（即所属文件）依赖全部服务，全部解析完成后再计算
+     *
+     * @param queueCapacity 队列容量
+     */
+    public void load(ProtoInfoScanner scanner, int queueCapacity) {
+        BlockingQueue<ScannedService> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Map<Integer, ProtoService> protoServices = new ConcurrentHashMap<>();
+        AtomicInteger scannedCount = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads + 1);
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+            completionService.submit(() -> {
+                scanner.scanServices(serviceClass -> put(queue,
+                        new ScannedService(scannedCount.getAndIncrement(), serviceClass)));
+                queue.put(ScannedService.END);
+                return null;
+            });
+            for (int i = 0; i < threads; i++) {
+                completionService.submit(() -> {
+                    parseScanned(queue, protoServices);
+                    return null;
+                });
+            }
+            // 任一阶段失败时立即结束（中断其他等待队列的线程）
+            for (int i = 0; i <= threads; i++) {
+                completionService.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        AssertUtils.isTrue(scannedCount.get() > 0, "don't found any service interface");
+        for (int index = 0; index < scannedCount.get(); index++) {
+            ProtoService protoService = protoServices.get(index);
+            if (protoService != null) {
+                registry.register(protoService);
+            }
+        }
+        buildTypeTable();
+    }
+
+    /**
+     * 解析线程：取到结束标记时放回（通知其他解析线程）并结束
+     */
+    private void parseScanned(BlockingQueue<ScannedService> queue, Map<Integer, ProtoService> protoServices)
+            throws InterruptedException {
+        ProtoInfoParser protoInfoParser = new ProtoInfoParser(registry, context);
+        while (true) {
+            ScannedService scanned = queue.take();
+            if (scanned == ScannedService.END) {
+                queue.put(ScannedService.END);
+                return;
+            }
+            ProtoService protoService = protoInfoParser.parse(scanned.serviceClass);
+            if (protoService != null) {
+                protoServices.put(scanned.index, protoService);
+            }
+        }
+    }
+
+    private static void put(BlockingQueue<ScannedService> queue, ScannedService scanned) {
+        try {
+            queue.put(scanned);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 扫描到的服务接口及其扫描顺序
+     */
+    private static final class ScannedService {
+
+        private static final ScannedService END = new ScannedService(-1, null);
+
+        private final int index;
+        private final Class<?> serviceClass;
+
+        private ScannedService(int index, Class<?> serviceClass) {
+            this.index = index;
+            this.serviceClass = serviceClass;
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.dld.hll.protobuf.generator;
 
+import com.dld.hll.protobuf.generator.entity.GenericTypeKey;
 import com.dld.hll.protobuf.generator.entity.ProtoGenericField;
 import com.dld.hll.protobuf.generator.entity.ProtoObject;
 import com.dld.hll.protobuf.generator.entity.ProtoService;
@@ -7,11 +8,10 @@ import com.dld.hll.protobuf.generator.util.AssertUtils;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Chen Hui
@@ -23,25 +23,43 @@ public class ProtoInfoRegistry {
     private List<ProtoService> protoServices = new ArrayList<>();
 
     /**
-     * 所有已经解析的类
+     * 所有已经解析的类（包含正在解析的类）
      */
-    private Map<Class<?>, ProtoObject> protoObjectMap = new HashMap<>();
+    private Map<Class<?>, ProtoObject> protoObjectMap = new ConcurrentHashMap<>();
 
     /**
-     * 正在解析的类
+     * 所有已经解析的泛型类（包含正在解析的泛型）
      */
-    private Map<Class<?>, ProtoObject> parsingClass = new HashMap<>();
+    private Map<GenericTypeKey, ProtoGenericField> genericFieldMap = new ConcurrentHashMap<>();
 
     /**
-     * 所有已经解析的泛型类
+     * 泛型类型的规范键，genericFieldMap 按键的实例查找
      */
-    private Map<Type, ProtoGenericField> genericFieldMap = new HashMap<>();
+    private GenericTypeKeyTable genericTypeKeyTable = new GenericTypeKeyTable();
 
     /**
-     * 正在解析的泛型
+     * 泛型封装消息的名称
      */
-    private Map<Type, ProtoGenericField> parsingType = new HashMap<>();
+    private GenericNameTable genericNameTable = new GenericNameTable();
 
+    /**
+     * 全部服务解析完成后构建，生成proto文件只依赖该类型表
+     */
+    private ProtoTypeTable typeTable;
+
+
+    /**
+     * 类型表构建完成后释放解析过程中的对象图（服务、对象及泛型，持有 Class、Field、Method），只保留类型表
+     * 生成及监听模式不再引用反射对象，服务类及其类加载器可以被回收
+     * 只减少释放之后的内存，解析期间的峰值内存不变（见 {@link ProtoInfoReader}）
+     */
+    public void release() {
+        protoServices = new ArrayList<>();
+        protoObjectMap.clear();
+        genericFieldMap.clear();
+        genericTypeKeyTable = new GenericTypeKeyTable();
+        genericNameTable = new GenericNameTable();
+    }
 
     public void register(ProtoService service) {
         AssertUtils.notNull(service);
@@ -52,51 +70,26 @@ public class ProtoInfoRegistry {
         protoObjectMap.put(clazz, obj);
     }
 
-    public void addCache(Type type, ProtoGenericField genericField) {
-        genericFieldMap.put(type, genericField);
+    public void addCache(GenericTypeKey key, ProtoGenericField genericField) {
+        genericFieldMap.put(key, genericField);
     }
 
-    public ProtoObject getCache(Class<?> clazz) {
-        return protoObjectMap.get(clazz);
-    }
-
-    public ProtoGenericField getCache(Type type) {
-        return genericFieldMap.get(type);
-    }
-
-    public void addParsing(Class<?> clazz, ProtoObject protoObject) {
-        parsingClass.put(clazz, protoObject);
-    }
-
-    public void addParsing(Type type, ProtoGenericField genericField) {
-        parsingType.put(type, genericField);
-    }
-
-    public void removeParsing(Class<?> clazz) {
-        parsingClass.remove(clazz);
-    }
-
-    public void removeParsing(Type type) {
-        parsingType.remove(type);
-    }
-
-    public boolean isParsing(Class<?> clazz) {
-        return parsingClass.containsKey(clazz);
-    }
-
-    public boolean isParsing(Type type) {
-        return parsingType.containsKey(type);
+    /**
+     * @return 已存在的缓存，不存在时放入并返回 null
+     */
+    public ProtoObject addCacheIfAbsent(Class<?> clazz, ProtoObject obj) {
+        return protoObjectMap.putIfAbsent(clazz, obj);
     }
 
-    public ProtoObject getParsing(Class<?> clazz) {
-        return parsingClass.get(clazz);
+    public ProtoGenericField addCacheIfAbsent(GenericTypeKey key, ProtoGenericField genericField) {
+        return genericFieldMap.putIfAbsent(key, genericField);
     }
 
-    public ProtoGenericField getParsing(Type type) {
-        return parsingType.get(type);
+    public ProtoObject getCache(Class<?> clazz) {
+        return protoObjectMap.get(clazz);
     }
 
-    public ProtoObject getFormParsingOrCache(Class<?> clazz) {
-        return isParsing(clazz) ? getParsing(clazz) : getCache(clazz);
+    public ProtoGenericField getCache(GenericTypeKey key) {
+        return genericFieldMap.get(key);
     }
 }
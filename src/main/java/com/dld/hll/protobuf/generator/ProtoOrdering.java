@@ -0,0 +1,35 @@
+package com.dld.hll.protobuf.generator;
+
+/**
+ * proto文件中服务、方法、字段及类型的输出顺序
+ *
+ * @author Chen Hui
+ */
+public enum ProtoOrdering {
+
+    /**
+     * 服务按扫描顺序，方法及字段按反射返回的顺序，类型按首次引用的顺序
+     * 反射返回的方法顺序没有保证，不同JVM或不同运行的输出顺序可能不同
+     */
+    DISCOVERY,
+
+    /**
+     * 服务按接口全名排序，方法及字段按类文件中的声明顺序，类型按首次引用的顺序
+     * 与扫描顺序、类加载顺序及JVM无关，模型不变时输出不变
+     */
+    DECLARATION,
+
+    /**
+     * 与 {@link #DECLARATION} 相同，但类型按依赖的拓扑顺序输出（被引用的类型在引用它的类型之前，循环引用时按首次引用断开）
+     * 对象及枚举、泛型封装消息仍分别输出，各自保持拓扑顺序
+     */
+    TOPOLOGICAL;
+
+
+    /**
+     * 是否为与运行环境无关的稳定顺序
+     */
+    public boolean isStable() {
+        return this != DISCOVERY;
+    }
+}
@@ -0,0 +1,545 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.*;
+import com.dld.hll.protobuf.generator.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * 生成proto文件所需的紧凑类型表，不持有任何反射对象，由反射解析或源码元素（注解处理器）构建的模型均可生成
+ * 类型按编号（0 ~ typeCount-1）存放在基本类型数组中，字段和方法按类型、服务连续存放（以起始下标数组索引），
+ * 名称和注释统一复用同一份字符串，服务包含的类型为一个扁平位图
+ *
+ * 类型引用：大于等于 0 为类型编号，{@link #NONE} 表示无（如方法无参数），其余为基础类型（-2 - 类型名的字符串下标）
+ *
+ * @author Chen Hui
+ */
+public class ProtoTypeTable {
+
+    public static final int NONE = -1;
+
+    /**
+     * 类型种类
+     */
+    public static final byte KIND_OBJECT = 0;
+    public static final byte KIND_ENUM = 1;
+    public static final byte KIND_GENERIC = 2;
+
+    /**
+     * 字段标签
+     */
+    public static final byte LABEL_SINGULAR = 0;
+    public static final byte LABEL_REPEATED = 1;
+    public static final byte LABEL_MAP = 2;
+
+    private String[] strings;
+
+    /**
+     * 自定义类型映射需要导入的proto文件（按文件名排序），及每个类型需要导入的文件（imports 的下标，以起始下标数组索引）
+     * 每个proto文件只导入其中定义的类型需要的文件
+     */
+    private String[] imports;
+    private int[] typeImportStarts;
+    private int[] typeImports;
+
+    /**
+     * 类型：种类、名称、注释、父类，泛型类型的标签及键值类型，字段起始下标
+     * 名称在解析时已计算，这里只保存字符串下标
+     */
+    private int typeCount;
+    private byte[] typeKinds;
+    private int[] typeNames;
+    private int[] typeComments;
+    private int[] superTypes;
+    private byte[] typeLabels;
+    private int[] typeKeys;
+    private int[] typeValues;
+    private int[] fieldStarts;
+
+    /**
+     * 泛型封装消息中唯一字段的名称（类型名首字母小写）
+     */
+    private int[] genericFieldNames;
+
+    /**
+     * 被多个服务引用的类型（生成在Common文件中）
+     */
+    private long[] shared;
+
+    /**
+     * 字段：名称、注释、标签及键值类型
+     */
+    private int[] fieldNames;
+    private int[] fieldComments;
+    private byte[] fieldLabels;
+    private int[] fieldKeys;
+    private int[] fieldValues;
+
+    /**
+     * 服务：名称、注释、包名，方法起始下标
+     */
+    private int serviceCount;
+    private int[] serviceNames;
+    private int[] serviceComments;
+    private int[] servicePackages;
+    private int[] methodStarts;
+    private Map<String, Integer> serviceIndexes;
+
+    /**
+     * 方法：名称、注释、参数及返回值类型
+     */
+    private int[] methodNames;
+    private int[] methodComments;
+    private int[] methodParameters;
+    private int[] methodReturns;
+
+    /**
+     * 服务所属类型（只被该服务引用，生成在服务文件中），每个服务占 membershipWords 个 long
+     */
+    private long[] membership;
+    private int membershipWords;
+
+
+    private ProtoTypeTable() {
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    public byte getTypeKind(int type) {
+        return typeKinds[type];
+    }
+
+    public String getTypeName(int type) {
+        return strings[typeNames[type]];
+    }
+
+    public String getTypeComment(int type) {
+        return getString(typeComments[type]);
+    }
+
+    public int getSuperType(int type) {
+        return superTypes[type];
+    }
+
+    public byte getTypeLabel(int type) {
+        return typeLabels[type];
+    }
+
+    public int getTypeKey(int type) {
+        return typeKeys[type];
+    }
+
+    public int getTypeValue(int type) {
+        return typeValues[type];
+    }
+
+    public String getGenericFieldName(int type) {
+        return strings[genericFieldNames[type]];
+    }
+
+    public int getFieldStart(int type) {
+        return fieldStarts[type];
+    }
+
+    public int getFieldEnd(int type) {
+        return fieldStarts[type + 1];
+    }
+
+    public boolean isShared(int type) {
+        return (shared[type >>> 6] & (1L << type)) != 0;
+    }
+
+    public String getFieldName(int field) {
+        return strings[fieldNames[field]];
+    }
+
+    public String getFieldComment(int field) {
+        return getString(fieldComments[field]);
+    }
+
+    public byte getFieldLabel(int field) {
+        return fieldLabels[field];
+    }
+
+    public int getFieldKey(int field) {
+        return fieldKeys[field];
+    }
+
+    public int getFieldValue(int field) {
+        return fieldValues[field];
+    }
+
+    public int getServiceCount() {
+        return serviceCount;
+    }
+
+    /**
+     * @return 不存在时返回 {@link #NONE}
+     */
+    public int getServiceIndex(String serviceName) {
+        return serviceIndexes.getOrDefault(serviceName, NONE);
+    }
+
+    public String getServiceName(int service) {
+        return strings[serviceNames[service]];
+    }
+
+    public String getServiceComment(int service) {
+        return getString(serviceComments[service]);
+    }
+
+    public String getServicePackage(int service) {
+        return strings[servicePackages[service]];
+    }
+
+    public int getMethodStart(int service) {
+        return methodStarts[service];
+    }
+
+    public int getMethodEnd(int service) {
+        return methodStarts[service + 1];
+    }
+
+    public String getMethodName(int method) {
+        return strings[methodNames[method]];
+    }
+
+    public String getMethodComment(int method) {
+        return getString(methodComments[method]);
+    }
+
+    public int getMethodParameter(int method) {
+        return methodParameters[method];
+    }
+
+    public int getMethodReturn(int method) {
+        return methodReturns[method];
+    }
+
+    public boolean isMember(int service, int type) {
+        return (membership[service * membershipWords + (type >>> 6)] & (1L << type)) != 0;
+    }
+
+    /**
+     * 类型引用的名称（基础类型为proto类型名）
+     */
+    public String getRefName(int ref) {
+        return ref >= 0 ? getTypeName(ref) : strings[-2 - ref];
+    }
+
+    /**
+     * 全部类型需要导入的proto文件
+     */
+    public List<String> getImports() {
+        return Arrays.asList(imports);
+    }
+
+    /**
+     * Common文件中的类型（被多个服务引用）需要导入的proto文件，按文件名排序
+     */
+    public List<String> getCommonImports() {
+        BitSet fileImports = new BitSet(imports.length);
+        for (int type = 0; type < typeCount; type++) {
+            if (isShared(type)) {
+                addTypeImports(fileImports, type);
+            }
+        }
+        return toImports(fileImports);
+    }
+
+    /**
+     * 服务文件中的类型（只被该服务引用）需要导入的proto文件，按文件名排序
+     */
+    public List<String> getServiceImports(int service) {
+        BitSet fileImports = new BitSet(imports.length);
+        for (int type = 0; type < typeCount; type++) {
+            if (isMember(service, type)) {
+                addTypeImports(fileImports, type);
+            }
+        }
+        return toImports(fileImports);
+    }
+
+    /**
+     * 父类的字段在子类的消息中输出，同时导入父类需要的文件
+     */
+    private void addTypeImports(BitSet fileImports, int type) {
+        for (int t = type; t != NONE; t = superTypes[t]) {
+            for (int i = typeImportStarts[t]; i < typeImportStarts[t + 1]; i++) {
+                fileImports.set(typeImports[i]);
+            }
+        }
+    }
+
+    private List<String> toImports(BitSet fileImports) {
+        List<String> importFiles = new ArrayList<>(fileImports.cardinality());
+        for (int i = fileImports.nextSetBit(0); i >= 0; i = fileImports.nextSetBit(i + 1)) {
+            importFiles.add(imports[i]);
+        }
+        return importFiles;
+    }
+
+    private String getString(int index) {
+        return index == NONE ? null : strings[index];
+    }
+
+
+    /**
+     * 由解析结果构建类型表
+     *
+     * @param nodes    类型图节点（ProtoObject 或 ProtoGenericField），下标即类型编号
+     * @param nodeIds  节点 -> 类型编号
+     * @param members  每个服务中首次解析的类型编号
+     */
+    static ProtoTypeTable build(List<ProtoService> protoServices, List<Object> nodes, Map<Object, Integer> nodeIds,
+                                List<BitSet> members) {
+        return new TableBuilder(nodeIds).build(protoServices, nodes, members);
+    }
+
+    private static final class TableBuilder {
+
+        private Map<Object, Integer> nodeIds;
+        private Map<String, Integer> stringIndexes = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+        private Set<String> imports = new TreeSet<>();
+
+        /**
+         * 每个类型需要导入的文件，正在构建的类型的导入
+         */
+        private List<Set<String>> typeImportFiles = new ArrayList<>();
+        private Set<String> currentImports;
+
+        private TableBuilder(Map<Object, Integer> nodeIds) {
+            this.nodeIds = nodeIds;
+        }
+
+        private ProtoTypeTable build(List<ProtoService> protoServices, List<Object> nodes, List<BitSet> members) {
+            ProtoTypeTable table = new ProtoTypeTable();
+            buildTypes(table, nodes);
+            buildServices(table, protoServices, nodes, members);
+            table.strings = strings.toArray(new String[0]);
+            table.imports = imports.toArray(new String[0]);
+            buildTypeImports(table);
+            return table;
+        }
+
+        private void buildTypeImports(ProtoTypeTable table) {
+            List<String> importFiles = Arrays.asList(table.imports);
+            int count = 0;
+            for (Set<String> files : typeImportFiles) {
+                count += files.size();
+            }
+
+            table.typeImportStarts = new int[typeImportFiles.size() + 1];
+            table.typeImports = new int[count];
+            int index = 0;
+            for (int type = 0; type < typeImportFiles.size(); type++) {
+                table.typeImportStarts[type] = index;
+                for (String file : typeImportFiles.get(type)) {
+                    table.typeImports[index++] = Collections.binarySearch(importFiles, file);
+                }
+            }
+            table.typeImportStarts[typeImportFiles.size()] = index;
+        }
+
+        private void buildTypes(ProtoTypeTable table, List<Object> nodes) {
+            int typeCount = nodes.size();
+            int fieldCount = 0;
+            for (Object node : nodes) {
+                if (node instanceof ProtoObject) {
+                    fieldCount += ((ProtoObject) node).getProtoFields().size();
+                }
+            }
+
+            table.typeCount = typeCount;
+            table.typeKinds = new byte[typeCount];
+            table.typeNames = new int[typeCount];
+            table.typeComments = new int[typeCount];
+            table.superTypes = new int[typeCount];
+            table.typeLabels = new byte[typeCount];
+            table.typeKeys = new int[typeCount];
+            table.typeValues = new int[typeCount];
+            table.fieldStarts = new int[typeCount + 1];
+            table.genericFieldNames = new int[typeCount];
+            table.shared = new long[(typeCount + 63) >>> 6];
+            table.fieldNames = new int[fieldCount];
+            table.fieldComments = new int[fieldCount];
+            table.fieldLabels = new byte[fieldCount];
+            table.fieldKeys = new int[fieldCount];
+            table.fieldValues = new int[fieldCount];
+
+            int field = 0;
+            for (int type = 0; type < typeCount; type++) {
+                table.fieldStarts[type] = field;
+                table.superTypes[type] = NONE;
+                table.typeKeys[type] = NONE;
+                table.typeValues[type] = NONE;
+                table.genericFieldNames[type] = NONE;
+
+                currentImports = new TreeSet<>();
+                typeImportFiles.add(currentImports);
+                Object node = nodes.get(type);
+                if (node instanceof ProtoObject) {
+                    ProtoObject protoObject = (ProtoObject) node;
+                    table.typeKinds[type] = protoObject.isEnum() ? KIND_ENUM : KIND_OBJECT;
+                    table.typeNames[type] = intern(protoObject.getName());
+                    table.typeComments[type] = intern(protoObject.getComment());
+                    if (protoObject.getSuperProtoObject() != null) {
+                        table.superTypes[type] = nodeIds.get(protoObject.getSuperProtoObject());
+                    }
+                    if (protoObject.getCitations() > 1) {
+                        table.shared[type >>> 6] |= 1L << type;
+                    }
+                    for (ProtoField protoField : protoObject.getProtoFields()) {
+                        table.fieldNames[field] = intern(protoField.getName());
+                        table.fieldComments[field] = intern(protoField.getComment());
+                        table.fieldKeys[field] = NONE;
+                        table.fieldValues[field] = NONE;
+                        if (protoField.getGeneric() != null) {
+                            int[] labelKeyValue = getLabelKeyValue(protoField.getGeneric());
+                            table.fieldLabels[field] = (byte) labelKeyValue[0];
+                            table.fieldKeys[field] = labelKeyValue[1];
+                            table.fieldValues[field] = labelKeyValue[2];
+                        } else if (protoField.getTypeMapping() != null) {
+                            table.fieldValues[field] = getRef(protoField.getTypeMapping(), protoField.getProtoObject());
+                        }
+                        field++;
+                    }
+                } else {
+                    ProtoGenericField genericField = (ProtoGenericField) node;
+                    table.typeKinds[type] = KIND_GENERIC;
+                    table.typeNames[type] = intern(genericField.getTypeName());
+                    table.genericFieldNames[type] = intern(StringUtils.uncapitalize(genericField.getTypeName()));
+                    table.typeComments[type] = NONE;
+                    int[] labelKeyValue = getLabelKeyValue(genericField);
+                    table.typeLabels[type] = (byte) labelKeyValue[0];
+                    table.typeKeys[type] = labelKeyValue[1];
+                    table.typeValues[type] = labelKeyValue[2];
+                    if (genericField.getCitations() > 1) {
+                        table.shared[type >>> 6] |= 1L << type;
+                    }
+                }
+            }
+            table.fieldStarts[typeCount] = field;
+            currentImports = null;
+        }
+
+        private void buildServices(ProtoTypeTable table, List<ProtoService> protoServices, List<Object> nodes,
+                                   List<BitSet> members) {
+            int serviceCount = protoServices.size();
+            int methodCount = 0;
+            for (ProtoService protoService : protoServices) {
+                methodCount += protoService.getProtoMethods().size();
+            }
+
+            table.serviceCount = serviceCount;
+            table.serviceNames = new int[serviceCount];
+            table.serviceComments = new int[serviceCount];
+            table.servicePackages = new int[serviceCount];
+            table.methodStarts = new int[serviceCount + 1];
+            table.serviceIndexes = new HashMap<>();
+            table.methodNames = new int[methodCount];
+            table.methodComments = new int[methodCount];
+            table.methodParameters = new int[methodCount];
+            table.methodReturns = new int[methodCount];
+            table.membershipWords = (nodes.size() + 63) >>> 6;
+            table.membership = new long[serviceCount * table.membershipWords];
+
+            int method = 0;
+            for (int service = 0; service < serviceCount; service++) {
+                ProtoService protoService = protoServices.get(service);
+                table.serviceNames[service] = intern(protoService.getName());
+                table.serviceComments[service] = intern(protoService.getComment());
+                table.servicePackages[service] = intern(protoService.getPackageName());
+                table.serviceIndexes.put(protoService.getName(), service);
+                table.methodStarts[service] = method;
+                for (ProtoMethod protoMethod : protoService.getProtoMethods()) {
+                    table.methodNames[method] = intern(protoMethod.getName());
+                    table.methodComments[method] = intern(protoMethod.getComment());
+                    table.methodParameters[method] = getRef(protoMethod.getParameterProtoObject());
+                    table.methodReturns[method] = getRef(protoMethod.getReturnProtoObject());
+                    method++;
+                }
+
+                // 只保留引用次数为 1 的类型
+                BitSet serviceMembers = members.get(service);
+                int offset = service * table.membershipWords;
+                for (int type = serviceMembers.nextSetBit(0); type >= 0; type = serviceMembers.nextSetBit(type + 1)) {
+                    if (getCitations(nodes.get(type)) == 1) {
+                        table.membership[offset + (type >>> 6)] |= 1L << type;
+                    }
+                }
+            }
+            table.methodStarts[serviceCount] = method;
+        }
+
+        /**
+         * 泛型的标签及键值类型，与原生成规则一致：Map的键为第一个非泛型参数，值为内嵌泛型或第二个参数
+         */
+        private int[] getLabelKeyValue(ProtoGenericField genericField) {
+            ProtoGenericField nestedGeneric = genericField.getNestedGeneric();
+            if (genericField.isCollection()) {
+                int value = nestedGeneric != null ? nodeIds.get(nestedGeneric) : getParameterRef(genericField, 0);
+                return new int[]{LABEL_REPEATED, NONE, value};
+            } else {
+                int key = getParameterRef(genericField, 0);
+                int value = nestedGeneric != null ? nodeIds.get(nestedGeneric) : getParameterRef(genericField, 1);
+                return new int[]{LABEL_MAP, key, value};
+            }
+        }
+
+        private int getParameterRef(ProtoGenericField genericField, int index) {
+            List<ProtoTypeMapping> typeMappings = genericField.getTypeMappings();
+            ProtoTypeMapping typeMapping = typeMappings.get(index);
+            if (!typeMapping.isObjectOrEnum()) {
+                return getBasicRef(typeMapping);
+            }
+            int objectIndex = 0;
+            for (int i = 0; i < index; i++) {
+                if (typeMappings.get(i).isObjectOrEnum()) {
+                    objectIndex++;
+                }
+            }
+            return nodeIds.get(genericField.getProtoObjects().get(objectIndex));
+        }
+
+        private int getRef(ProtoTypeMapping typeMapping, ProtoObject protoObject) {
+            return typeMapping.isObjectOrEnum() ? nodeIds.get(protoObject) : getBasicRef(typeMapping);
+        }
+
+        /**
+         * 基础类型引用，同时记录正在构建的类型需要导入的proto文件
+         */
+        private int getBasicRef(ProtoTypeMapping typeMapping) {
+            if (typeMapping.getImportFile() != null) {
+                imports.add(typeMapping.getImportFile());
+                currentImports.add(typeMapping.getImportFile());
+            }
+            return -2 - intern(typeMapping.getTypeName());
+        }
+
+        private int getRef(ProtoObject protoObject) {
+            return protoObject == null ? NONE : nodeIds.get(protoObject);
+        }
+
+        private int getCitations(Object node) {
+            return node instanceof ProtoObject ? ((ProtoObject) node).getCitations() :
+                    ((ProtoGenericField) node).getCitations();
+        }
+
+        private int intern(String str) {
+            if (str == null) {
+                return NONE;
+            }
+            Integer index = stringIndexes.get(str);
+            if (index == null) {
+                index = strings.size();
+                strings.add(str);
+                stringIndexes.put(str, index);
+            }
+            return index;
+        }
+    }
+}
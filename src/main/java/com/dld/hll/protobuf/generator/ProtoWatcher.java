@@ -0,0 +1,296 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.*;
+import com.dld.hll.protobuf.generator.scanner.SelectableScanner;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 监听模式
+ * 监听项目源码目录及编译输出目录，合并一段时间内的连续变化，
+ * 根据变化的类找到受影响的服务，只重新生成这些服务及Common的proto文件
+ *
+ * 由于类型归属（服务文件或Common）取决于全部服务之间的引用关系，每次变化仍会重新扫描和解析全部服务；
+ * 没有引用变化类的服务也可能因其他服务的引用变化而得到或失去类型，与上次的归属比较：
+ * Common的类型变化时全部重新生成，服务拥有的类型变化时重新生成该服务
+ *
+ * @author Chen Hui
+ */
+class ProtoWatcher {
+
+    private ProtoExecutor executor;
+    private Path projectPath;
+    private Path projectJavaPath;
+    private Path classesPath;
+    private long debounceMillis;
+    private Consumer<Throwable> failureHandler;
+
+    /**
+     * 服务名 -> 该服务引用的全部顶层类名
+     */
+    private Map<String, Set<String>> serviceClassNames;
+
+    /**
+     * 上次生成时Common中的类型名，及服务名 -> 服务文件中的类型名
+     */
+    private Set<String> sharedTypeNames;
+    private Map<String, Set<String>> serviceTypeNames;
+
+
+    ProtoWatcher(ProtoExecutor executor, Path projectPath, Path projectJavaPath, Path classesPath,
+                 long debounceMillis, Consumer<Throwable> failureHandler) {
+        this.executor = executor;
+        this.projectPath = projectPath;
+        this.projectJavaPath = projectJavaPath;
+        this.classesPath = classesPath;
+        this.debounceMillis = debounceMillis;
+        this.failureHandler = failureHandler;
+    }
+
+    void watch() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            registerAll(watchService, projectJavaPath);
+            if (Files.isDirectory(classesPath)) {
+                registerAll(watchService, classesPath);
+            }
+
+            regenerate(null);
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<String> changedClassNames = awaitChanges(watchService);
+                if (!changedClassNames.isEmpty()) {
+                    regenerate(changedClassNames);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 等待文件变化，直到 debounceMillis 内没有新的变化
+     *
+     * @return 变化的顶层类名
+     */
+    private Set<String> awaitChanges(WatchService watchService) throws InterruptedException, IOException {
+        Set<String> changedClassNames = new HashSet<>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 事件丢失，无法确定变化范围
+                    changedClassNames.add("*");
+                    continue;
+                }
+
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    registerAll(watchService, path);
+                }
+                String className = toClassName(path);
+                if (className != null) {
+                    changedClassNames.add(className);
+                }
+            }
+            key.reset();
+            key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        }
+        return changedClassNames;
+    }
+
+    /**
+     * 重新扫描解析，并生成受影响的服务
+     *
+     * @param changedClassNames 变化的顶层类名，为 null 时全部生成
+     */
+    private void regenerate(Set<String> changedClassNames) {
+        try {
+            // 服务引用的类名在对象图释放之前记录，之后只持有类型表
+            Map<String, Set<String>> current = new HashMap<>();
+            ProtoTypeTable typeTable;
+            try (SelectableScanner scanner = executor.createScanner(projectPath)) {
+                typeTable = executor.scanAndParse(scanner, protoServices -> {
+                    for (ProtoService protoService : protoServices) {
+                        current.put(protoService.getName(), collectClassNames(protoService));
+                    }
+                });
+            }
+            ProtoFileGenerator generator = executor.createGenerator(typeTable, projectPath);
+            executor.generateDescriptorSet(typeTable);
+
+            Map<String, Set<String>> previous = serviceClassNames;
+            serviceClassNames = current;
+            Set<String> previousShared = sharedTypeNames;
+            Map<String, Set<String>> previousOwned = serviceTypeNames;
+            recordOwnership(typeTable);
+
+            if (changedClassNames == null || previous == null || changedClassNames.contains("*") ||
+                    !sharedTypeNames.equals(previousShared)) {
+                generator.generate();
+                return;
+            }
+
+            // 已不存在的服务
+            for (String serviceName : previous.keySet()) {
+                if (!serviceClassNames.containsKey(serviceName)) {
+                    generator.delete(serviceName);
+                }
+            }
+
+            // 新增的服务，变化前后引用了变化类的服务，或拥有的类型变化的服务
+            List<String> affected = new ArrayList<>();
+            for (int service = 0; service < typeTable.getServiceCount(); service++) {
+                String serviceName = typeTable.getServiceName(service);
+                Set<String> before = previous.get(serviceName);
+                Set<String> after = serviceClassNames.get(serviceName);
+                if (before == null || isIntersect(before, changedClassNames) || isIntersect(after, changedClassNames) ||
+                        !serviceTypeNames.get(serviceName).equals(previousOwned.get(serviceName))) {
+                    affected.add(serviceName);
+                }
+            }
+            if (!affected.isEmpty() || previous.size() != serviceClassNames.size()) {
+                generator.generate(affected);
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // 源码正在编辑或尚未编译完成时跳过本次，继续监听；其他异常为生成错误，结束监听
+            if (!isLoadingFailure(e)) {
+                throw e;
+            }
+            failureHandler.accept(e);
+        }
+    }
+
+    /**
+     * 记录本次生成的类型归属
+     */
+    private void recordOwnership(ProtoTypeTable typeTable) {
+        sharedTypeNames = new HashSet<>();
+        serviceTypeNames = new HashMap<>();
+        for (int service = 0; service < typeTable.getServiceCount(); service++) {
+            serviceTypeNames.put(typeTable.getServiceName(service), new HashSet<>());
+        }
+        for (int type = 0; type < typeTable.getTypeCount(); type++) {
+            if (typeTable.isShared(type)) {
+                sharedTypeNames.add(typeTable.getTypeName(type));
+            }
+            for (int service = 0; service < typeTable.getServiceCount(); service++) {
+                if (typeTable.isMember(service, type)) {
+                    serviceTypeNames.get(typeTable.getServiceName(service)).add(typeTable.getTypeName(type));
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否为类加载失败（类尚未编译、只编译了一部分或引用的类已删除），包括解析线程中抛出后被包装的情况
+     */
+    private boolean isLoadingFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClassNotFoundException || cause instanceof LinkageError) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 服务引用的全部顶层类名（服务接口、参数及返回值，以及其字段、父类、泛型中引用的类）
+     */
+    private Set<String> collectClassNames(ProtoService protoService) {
+        Set<String> classNames = new HashSet<>();
+        classNames.add(getTopLevelName(protoService.getServiceClass()));
+
+        Set<ProtoObject> visited = new HashSet<>();
+        Deque<ProtoObject> pending = new ArrayDeque<>();
+        for (ProtoMethod protoMethod : protoService.getProtoMethods()) {
+            addIfNotNull(pending, protoMethod.getParameterProtoObject());
+            addIfNotNull(pending, protoMethod.getReturnProtoObject());
+        }
+        while (!pending.isEmpty()) {
+            ProtoObject protoObject = pending.poll();
+            if (!visited.add(protoObject)) {
+                continue;
+            }
+
+            classNames.add(getTopLevelName(protoObject.getClazz()));
+            addIfNotNull(pending, protoObject.getSuperProtoObject());
+            for (ProtoField protoField : protoObject.getProtoFields()) {
+                addIfNotNull(pending, protoField.getProtoObject());
+                for (ProtoGenericField generic = protoField.getGeneric(); generic != null;
+                     generic = generic.getNestedGeneric()) {
+                    pending.addAll(generic.getProtoObjects());
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private void addIfNotNull(Deque<ProtoObject> pending, ProtoObject protoObject) {
+        if (protoObject != null) {
+            pending.add(protoObject);
+        }
+    }
+
+    private String getTopLevelName(Class<?> clazz) {
+        while (clazz.getEnclosingClass() != null) {
+            clazz = clazz.getEnclosingClass();
+        }
+        return clazz.getName();
+    }
+
+    /**
+     * 源码文件（X.java）或类文件（X.class、X$Y.class）对应的顶层类名，其他文件返回 null
+     */
+    private String toClassName(Path path) {
+        Path root;
+        String suffix;
+        if (path.startsWith(projectJavaPath)) {
+            root = projectJavaPath;
+            suffix = ".java";
+        } else if (path.startsWith(classesPath)) {
+            root = classesPath;
+            suffix = ".class";
+        } else {
+            return null;
+        }
+
+        String relative = root.relativize(path).toString();
+        if (!relative.endsWith(suffix)) {
+            return null;
+        }
+        String className = relative.substring(0, relative.length() - suffix.length())
+                .replace(path.getFileSystem().getSeparator(), ".");
+        int innerIndex = className.indexOf('$');
+        return innerIndex == -1 ? className : className.substring(0, innerIndex);
+    }
+
+    private boolean isIntersect(Set<String> classNames, Set<String> changedClassNames) {
+        for (String changedClassName : changedClassNames) {
+            if (classNames.contains(changedClassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 注册目录及其全部子目录
+     */
+    private void registerAll(WatchService watchService, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
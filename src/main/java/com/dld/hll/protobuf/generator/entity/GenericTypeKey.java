@@ -0,0 +1,49 @@
+package com.dld.hll.protobuf.generator.entity;
+
+import lombok.Getter;
+
+import java.lang.reflect.ParameterizedType;
+
+/**
+ * 泛型类型的规范键，由 {@link com.dld.hll.protobuf.generator.GenericTypeKeyTable} 创建
+ * 同一张表中相同结构（原始类型及参数类型都相同）的泛型只有一个实例，不重写 equals/hashCode，按实例比较
+ *
+ * @author Chen Hui
+ */
+@Getter
+public final class GenericTypeKey {
+
+    private final Class<?> rawType;
+
+    /**
+     * 参数类型，为 Class 或内嵌泛型的 GenericTypeKey
+     */
+    private final Object[] arguments;
+
+    /**
+     * 首次出现的泛型类型
+     */
+    private final ParameterizedType type;
+
+
+    public GenericTypeKey(Class<?> rawType, Object[] arguments, ParameterizedType type) {
+        this.rawType = rawType;
+        this.arguments = arguments;
+        this.type = type;
+    }
+
+    /**
+     * 与解析规则一致：内嵌泛型只保留最后一个非 Class 参数
+     *
+     * @return 没有内嵌泛型时返回 null
+     */
+    public GenericTypeKey getNestedKey() {
+        GenericTypeKey nestedKey = null;
+        for (Object argument : arguments) {
+            if (argument instanceof GenericTypeKey) {
+                nestedKey = (GenericTypeKey) argument;
+            }
+        }
+        return nestedKey;
+    }
+}
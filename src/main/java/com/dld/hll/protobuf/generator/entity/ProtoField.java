@@ -1,6 +1,5 @@
 package com.dld.hll.protobuf.generator.entity;
 
-import com.dld.hll.protobuf.generator.util.ProtoUtils;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -13,13 +12,17 @@ import java.lang.reflect.Field;
 @Setter
 public class ProtoField extends ProtoCommentSupport {
 
+    /**
+     * 字段，由源码元素构建时（注解处理器）为 null
+     */
     private Field field;
+    private String name;
 
     /**
      * 字段类型
      */
     private Class<?> fieldType;
-    private ProtoFieldType protoFieldType;
+    private ProtoTypeMapping typeMapping;
 
     /**
      * 字段为对象类型
@@ -33,18 +36,17 @@ public class ProtoField extends ProtoCommentSupport {
 
 
     public ProtoField(Field field) {
+        this(field.getName());
         this.field = field;
         this.fieldType = field.getType();
     }
 
-    @Override
-    public String getName() {
-        return field.getName();
+    public ProtoField(String name) {
+        this.name = name;
     }
 
-    @Override
-    public String getComment() {
-        return getComment(field);
+    public ProtoFieldType getProtoFieldType() {
+        return typeMapping == null ? null : typeMapping.getProtoFieldType();
     }
 
     /**
@@ -52,10 +54,10 @@ public class ProtoField extends ProtoCommentSupport {
      */
     public String getTypeName() {
         if (isNotGeneric()) {
-            if (ProtoUtils.isBasicType(protoFieldType)) {
-                return protoFieldType.getName();
+            if (!typeMapping.isObjectOrEnum()) {
+                return typeMapping.getTypeName();
             } else {
-                return fieldType.getSimpleName();
+                return protoObject.getName();
             }
         } else {
             // 泛型没有类型名，在生成文件时再做处理
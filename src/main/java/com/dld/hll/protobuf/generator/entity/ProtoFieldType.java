@@ -19,11 +19,16 @@ public enum ProtoFieldType {
     BOOL_VALUE("google.protobuf.BoolValue"),
     STRING("string"),
     STRING_VALUE("google.protobuf.StringValue"),
+    BYTES("bytes"),
     BIG_DECIMAL("string"),
     LOCAL_DATE("string"),
     LOCAL_DATETIME("string"),
     LOCAL_TIME("string"),
     TIMESTAMP("string"),
+    /**
+     * 自定义映射的类型，类型名由 {@link ProtoTypeMapping} 指定
+     */
+    CUSTOM(null),
     ENUM("enum"),
     OBJECT("message");
 
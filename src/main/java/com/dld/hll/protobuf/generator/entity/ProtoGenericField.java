@@ -1,5 +1,6 @@
 package com.dld.hll.protobuf.generator.entity;
 
+import com.dld.hll.protobuf.generator.util.ProtoUtils;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -7,6 +8,7 @@ import lombok.Setter;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -29,6 +31,23 @@ public class ProtoGenericField extends ProtoCommentSupport {
      */
     private ParameterizedType type;
 
+    /**
+     * 泛型类型的规范键（注册表中按此查找）
+     * 以上均为反射解析时使用，由源码元素构建时（注解处理器）为 null
+     */
+    private GenericTypeKey typeKey;
+
+    /**
+     * 是否为 Collection 类型（否则为 Map 类型）
+     */
+    private boolean isCollection;
+
+    /**
+     * 内嵌的范型需要转换为 proto message 进行封装，该 message 的名称（解析时由名称表计算）
+     */
+    private String typeName;
+    private String name;
+
     /**
      * 内嵌引用次数（非最外层）
      * 外层初始化 0，内嵌初始化 1
@@ -40,15 +59,20 @@ public class ProtoGenericField extends ProtoCommentSupport {
      */
     private int length;
 
+    /**
+     * 为泛型的参数下标，其余参数按顺序对应 parameterTypes 及 typeMappings
+     */
+    private BitSet genericArguments;
+
     /**
      * 泛型参数对应的Class类型
      */
     private List<Class<?>> parameterTypes;
 
     /**
-     * parameterTypes 对应的 ProtoFieldType
+     * parameterTypes 对应的proto类型
      */
-    private List<ProtoFieldType> protoFieldTypes;
+    private List<ProtoTypeMapping> typeMappings;
 
     /**
      * 内嵌对象类型
@@ -62,58 +86,51 @@ public class ProtoGenericField extends ProtoCommentSupport {
     private ProtoGenericField nestedGeneric;
 
 
-    public ProtoGenericField(Field field, ParameterizedType type, int citations) {
+    public ProtoGenericField(Field field, GenericTypeKey typeKey, String typeName) {
+        this(typeName, ProtoUtils.isCollection(typeKey.getRawType()), typeKey.getArguments().length);
         this.field = field;
-        this.type = type;
-        this.citations = citations;
-        this.length = type.getActualTypeArguments().length;
-        parameterTypes = new ArrayList<>(length);
-        protoFieldTypes = new ArrayList<>(length);
-        protoObjects = new ArrayList<>(length);
+        this.type = typeKey.getType();
+        this.typeKey = typeKey;
+        Object[] arguments = typeKey.getArguments();
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof GenericTypeKey) {
+                genericArguments.set(i);
+            }
+        }
     }
 
-    public void addParameterType(Class<?> clazz) {
-        parameterTypes.add(clazz);
+    /**
+     * @param length 泛型参数个数，为泛型的参数由 {@link #setGenericArgument(int)} 标记
+     */
+    public ProtoGenericField(String typeName, boolean isCollection, int length) {
+        this.typeName = typeName;
+        this.name = typeName.toLowerCase();
+        this.isCollection = isCollection;
+        this.length = length;
+        genericArguments = new BitSet(length);
+        parameterTypes = new ArrayList<>(length);
+        typeMappings = new ArrayList<>(length);
+        protoObjects = new ArrayList<>(length);
     }
 
-    public void addProtoFieldType(ProtoFieldType protoFieldType) {
-        protoFieldTypes.add(protoFieldType);
+    public void setGenericArgument(int index) {
+        genericArguments.set(index);
     }
 
-    public void addProtoObject(ProtoObject protoObject) {
-        protoObjects.add(protoObject);
+    public boolean isGenericArgument(int index) {
+        return genericArguments.get(index);
     }
 
-    @Override
-    public String getName() {
-        return getTypeName().toLowerCase();
+    public void addParameterType(Class<?> clazz) {
+        parameterTypes.add(clazz);
     }
 
-    @Override
-    public String getComment() {
-        return null;
+    public void addTypeMapping(ProtoTypeMapping typeMapping) {
+        typeMappings.add(typeMapping);
     }
 
-    /**
-     * 内嵌的范型需要转换为 proto message 进行封装，该方法返回该 message 名称
-     */
-    public String getTypeName() {
-        StringBuilder typeName = new StringBuilder(((Class<?>) type.getRawType()).getSimpleName());
-        if (isNotGeneric()) {
-            // 不存在内嵌泛型时，拼接全部的参数类型
-            for (Class<?> type : parameterTypes) {
-                typeName.append(type.getSimpleName());
-            }
-        } else {
-            // 存在内嵌泛型
-            if (length == 1) {
-                typeName.append(nestedGeneric.getTypeName());
-            } else {
-                typeName.append(parameterTypes.get(0).getSimpleName())
-                        .append(nestedGeneric.getTypeName());
-            }
-        }
-        return typeName.toString();
+    public void addProtoObject(ProtoObject protoObject) {
+        protoObjects.add(protoObject);
     }
 
     public boolean isNotGeneric() {
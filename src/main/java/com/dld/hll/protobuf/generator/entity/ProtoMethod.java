@@ -12,7 +12,11 @@ import java.lang.reflect.Method;
 @Setter
 public class ProtoMethod extends ProtoCommentSupport {
 
+    /**
+     * 方法，由源码元素构建时（注解处理器）为 null
+     */
     private Method method;
+    private String name;
 
     /**
      * 方法参数类型，个数最多一个
@@ -28,17 +32,12 @@ public class ProtoMethod extends ProtoCommentSupport {
 
 
     public ProtoMethod(Method method) {
+        this(method.getName());
         this.method = method;
     }
 
-    @Override
-    public String getName() {
-        return method.getName();
-    }
-
-    @Override
-    public String getComment() {
-        return getComment(method);
+    public ProtoMethod(String name) {
+        this.name = name;
     }
 
     /**
@@ -14,7 +14,12 @@ import java.util.List;
 @Setter
 public class ProtoObject extends ProtoCommentSupport {
 
+    /**
+     * 对应的类，由源码元素构建时（注解处理器）为 null
+     */
     private Class<?> clazz;
+    private String name;
+    private boolean isEnum;
 
     /**
      * 被引用次数
@@ -33,17 +38,13 @@ public class ProtoObject extends ProtoCommentSupport {
 
 
     public ProtoObject(Class<?> clazz) {
+        this(clazz.getSimpleName(), clazz.isEnum());
         this.clazz = clazz;
     }
 
-    @Override
-    public String getName() {
-        return clazz.getSimpleName();
-    }
-
-    @Override
-    public String getComment() {
-        return getComment(clazz);
+    public ProtoObject(String name, boolean isEnum) {
+        this.name = name;
+        this.isEnum = isEnum;
     }
 
     public void increaseCitations() {
@@ -3,10 +3,7 @@ package com.dld.hll.protobuf.generator.entity;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.lang.reflect.Type;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author Chen Hui
@@ -15,51 +12,30 @@ import java.util.Map;
 @Setter
 public class ProtoService extends ProtoCommentSupport {
 
-    private Class<?> serviceClass;
-
     /**
-     * 全部方法
+     * 服务接口类，由源码元素构建时（注解处理器）为 null
      */
-    private List<ProtoMethod> protoMethods;
+    private Class<?> serviceClass;
 
     /**
-     * 当前服务接口中全部解析类
+     * 服务名（接口类名）及所在包名
      */
-    private Map<Class<?>, ProtoObject> protoObjectMap = new HashMap<>();
+    private String name;
+    private String packageName;
 
     /**
-     * 当前服务接口中全部内嵌泛型类
+     * 全部方法
      */
-    private Map<Type, ProtoGenericField> genericFieldMap = new HashMap<>();
+    private List<ProtoMethod> protoMethods;
 
 
     public ProtoService(Class<?> serviceClass) {
+        this(serviceClass.getSimpleName(), serviceClass.getPackage().getName());
         this.serviceClass = serviceClass;
     }
 
-    @Override
-    public String getName() {
-        return serviceClass.getSimpleName();
-    }
-
-    @Override
-    public String getComment() {
-        return getComment(serviceClass);
-    }
-
-    public boolean isExists(Class<?> clazz) {
-        return protoObjectMap.containsKey(clazz);
-    }
-
-    public boolean isExists(Type type) {
-        return genericFieldMap.containsKey(type);
-    }
-
-    public void addParsed(Class<?> clazz, ProtoObject protoObject) {
-        protoObjectMap.put(clazz, protoObject);
-    }
-
-    public void addParsed(Type type, ProtoGenericField protoGenericField) {
-        genericFieldMap.put(type, protoGenericField);
+    public ProtoService(String name, String packageName) {
+        this.name = name;
+        this.packageName = packageName;
     }
 }
@@ -0,0 +1,67 @@
+package com.dld.hll.protobuf.generator.entity;
+
+import com.dld.hll.protobuf.generator.util.AssertUtils;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Java类型对应的proto类型
+ * 内置类型使用 {@link #of(ProtoFieldType)}，自定义类型（如 google.protobuf.Timestamp）使用 {@link #custom(String, String)}
+ *
+ * @author Chen Hui
+ */
+@Getter
+@ToString
+public final class ProtoTypeMapping {
+
+    private static final ProtoTypeMapping[] BUILT_IN_MAPPINGS;
+
+    static {
+        ProtoFieldType[] protoFieldTypes = ProtoFieldType.values();
+        BUILT_IN_MAPPINGS = new ProtoTypeMapping[protoFieldTypes.length];
+        for (ProtoFieldType protoFieldType : protoFieldTypes) {
+            BUILT_IN_MAPPINGS[protoFieldType.ordinal()] = new ProtoTypeMapping(protoFieldType,
+                    protoFieldType.getName(), null);
+        }
+    }
+
+    private final ProtoFieldType protoFieldType;
+
+    /**
+     * proto类型名，对象及枚举类型使用类名
+     */
+    private final String typeName;
+
+    /**
+     * 需要导入的proto文件（如 google/protobuf/timestamp.proto），没有时为 null
+     */
+    private final String importFile;
+
+
+    private ProtoTypeMapping(ProtoFieldType protoFieldType, String typeName, String importFile) {
+        this.protoFieldType = protoFieldType;
+        this.typeName = typeName;
+        this.importFile = importFile;
+    }
+
+    public static ProtoTypeMapping of(ProtoFieldType protoFieldType) {
+        AssertUtils.isTrue(protoFieldType != ProtoFieldType.CUSTOM, "Custom type must specify the type name");
+        return BUILT_IN_MAPPINGS[protoFieldType.ordinal()];
+    }
+
+    public static ProtoTypeMapping custom(String typeName) {
+        return custom(typeName, null);
+    }
+
+    public static ProtoTypeMapping custom(String typeName, String importFile) {
+        AssertUtils.hasText(typeName);
+        return new ProtoTypeMapping(ProtoFieldType.CUSTOM, typeName, importFile);
+    }
+
+    /**
+     * 是否为需要进一步解析的对象或枚举类型
+     */
+    public boolean isObjectOrEnum() {
+        return protoFieldType == ProtoFieldType.OBJECT || protoFieldType == ProtoFieldType.ENUM;
+    }
+}
@@ -0,0 +1,30 @@
+package com.dld.hll.protobuf.generator.mapper;
+
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Java类型到proto类型的映射扩展点
+ * 同一类型只会被调用一次（结果由 {@link TypeMapperRegistry} 缓存），并发解析时可能被多个线程同时调用
+ *
+ * @author Chen Hui
+ */
+public interface TypeMapper {
+
+    /**
+     * @return 不处理该类型时返回 null，交由下一个映射器或内置规则处理
+     */
+    ProtoTypeMapping map(Class<?> clazz);
+
+    /**
+     * 按 Class 判断的映射器需要返回其处理的类型，这些类型与服务类加载器共享（由调用方的类加载器加载），
+     * 否则隔离加载的服务类引用的是另一个同名 Class，映射不会生效
+     *
+     * @return 处理的类型，按其他方式（如类名、注解）判断时返回空集合
+     */
+    default Collection<Class<?>> getMappedTypes() {
+        return Collections.emptySet();
+    }
+}
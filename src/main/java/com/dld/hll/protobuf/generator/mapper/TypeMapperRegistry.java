@@ -0,0 +1,143 @@
+package com.dld.hll.protobuf.generator.mapper;
+
+import com.dld.hll.protobuf.generator.entity.ProtoFieldType;
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Java类型到proto类型的映射表
+ *
+ * 查找顺序：
+ * 1. 按类精确匹配自定义映射及内置映射（自定义映射优先）
+ * 2. 依次调用自定义 {@link TypeMapper}
+ * 3. 枚举为 ENUM
+ * 4. 按父类、接口匹配映射表（如 Timestamp 的子类），都不匹配时为 OBJECT
+ * 每个类的结果通过 ClassValue 缓存，只计算一次
+ *
+ * @author Chen Hui
+ */
+public class TypeMapperRegistry implements TypeMapper {
+
+    private static final Map<Class<?>, ProtoTypeMapping> BUILT_IN_MAPPINGS = new HashMap<>();
+
+    static {
+        addBuiltIn(ProtoFieldType.DOUBLE, double.class);
+        addBuiltIn(ProtoFieldType.DOUBLE_VALUE, Double.class);
+        addBuiltIn(ProtoFieldType.FLOAT, float.class);
+        addBuiltIn(ProtoFieldType.FLOAT_VALUE, Float.class);
+        addBuiltIn(ProtoFieldType.LONG, long.class);
+        addBuiltIn(ProtoFieldType.LONG_VALUE, Long.class);
+        addBuiltIn(ProtoFieldType.INT, int.class, short.class, byte.class, char.class);
+        addBuiltIn(ProtoFieldType.INT_VALUE, Integer.class, Short.class, Byte.class, Character.class);
+        addBuiltIn(ProtoFieldType.BOOL, boolean.class);
+        addBuiltIn(ProtoFieldType.BOOL_VALUE, Boolean.class);
+        addBuiltIn(ProtoFieldType.STRING_VALUE, String.class);
+        addBuiltIn(ProtoFieldType.BIG_DECIMAL, BigDecimal.class);
+        addBuiltIn(ProtoFieldType.LOCAL_DATE, LocalDate.class);
+        addBuiltIn(ProtoFieldType.LOCAL_DATETIME, LocalDateTime.class);
+        addBuiltIn(ProtoFieldType.LOCAL_TIME, LocalTime.class);
+        addBuiltIn(ProtoFieldType.TIMESTAMP, Timestamp.class);
+    }
+
+    private static final ProtoTypeMapping ENUM_MAPPING = ProtoTypeMapping.of(ProtoFieldType.ENUM);
+    private static final ProtoTypeMapping OBJECT_MAPPING = ProtoTypeMapping.of(ProtoFieldType.OBJECT);
+
+    /**
+     * 只包含内置映射，未自定义映射时各次生成共用
+     */
+    public static final TypeMapperRegistry DEFAULT = new TypeMapperRegistry(Collections.emptyMap(),
+            Collections.emptyList());
+
+    /**
+     * 内置映射及自定义映射
+     */
+    private final Map<Class<?>, ProtoTypeMapping> mappings;
+    private final List<TypeMapper> typeMappers;
+
+    private final ClassValue<ProtoTypeMapping> cache = new ClassValue<ProtoTypeMapping>() {
+        @Override
+        protected ProtoTypeMapping computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+
+    public TypeMapperRegistry(Map<Class<?>, ProtoTypeMapping> customMappings, List<TypeMapper> typeMappers) {
+        this.mappings = new HashMap<>(BUILT_IN_MAPPINGS);
+        this.mappings.putAll(customMappings);
+        this.typeMappers = new ArrayList<>(typeMappers);
+    }
+
+    private static void addBuiltIn(ProtoFieldType protoFieldType, Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            BUILT_IN_MAPPINGS.put(clazz, ProtoTypeMapping.of(protoFieldType));
+        }
+    }
+
+    @Override
+    public ProtoTypeMapping map(Class<?> clazz) {
+        return cache.get(clazz);
+    }
+
+    /**
+     * 只按类精确匹配自定义映射及内置映射（不调用 {@link TypeMapper}，不匹配父类），没有时返回 null
+     * 注解处理器按源码元素的父类、接口查找映射时使用
+     */
+    public ProtoTypeMapping getExactMapping(Class<?> clazz) {
+        return mappings.get(clazz);
+    }
+
+    private ProtoTypeMapping resolve(Class<?> clazz) {
+        ProtoTypeMapping mapping = mappings.get(clazz);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        for (TypeMapper typeMapper : typeMappers) {
+            mapping = typeMapper.map(clazz);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+
+        if (Enum.class.isAssignableFrom(clazz)) {
+            return ENUM_MAPPING;
+        }
+        mapping = resolveHierarchy(clazz);
+        return mapping != null ? mapping : OBJECT_MAPPING;
+    }
+
+    /**
+     * 先按父类由近及远，再按接口广度优先匹配
+     */
+    private ProtoTypeMapping resolveHierarchy(Class<?> clazz) {
+        Deque<Class<?>> interfaces = new ArrayDeque<>(Arrays.asList(clazz.getInterfaces()));
+        for (Class<?> superclass = clazz.getSuperclass(); superclass != null && superclass != Object.class;
+             superclass = superclass.getSuperclass()) {
+            ProtoTypeMapping mapping = mappings.get(superclass);
+            if (mapping != null) {
+                return mapping;
+            }
+            interfaces.addAll(Arrays.asList(superclass.getInterfaces()));
+        }
+
+        Set<Class<?>> visited = new HashSet<>();
+        while (!interfaces.isEmpty()) {
+            Class<?> superInterface = interfaces.poll();
+            if (visited.add(superInterface)) {
+                ProtoTypeMapping mapping = mappings.get(superInterface);
+                if (mapping != null) {
+                    return mapping;
+                }
+                interfaces.addAll(Arrays.asList(superInterface.getInterfaces()));
+            }
+        }
+        return null;
+    }
+}
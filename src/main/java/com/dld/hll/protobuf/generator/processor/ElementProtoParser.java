@@ -0,0 +1,377 @@
+package com.dld.hll.protobuf.generator.processor;
+
+import com.dld.hll.protobuf.generator.GenericNameTable;
+import com.dld.hll.protobuf.generator.entity.*;
+import com.dld.hll.protobuf.generator.util.StringUtils;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.*;
+
+/**
+ * 由 javax.lang.model 元素构建与反射解析相同的模型（ProtoService、ProtoObject、ProtoGenericField），
+ * 规则与 ProtoInfoParser 一致，之后由 ProtoCitationAnalyzer 及 ProtoFileGenerator 共用同一流程生成
+ * 方法及字段按源码中的声明顺序解析
+ *
+ * @author Chen Hui
+ */
+class ElementProtoParser {
+
+    private Elements elements;
+    private Types types;
+    private TypeMirror collectionType;
+    private TypeMirror mapType;
+    private ElementTypeMapper typeMapper;
+
+    /**
+     * 注释注解类全名，及获取注释值的方法名
+     */
+    private String commentType;
+    private String commentMethod;
+
+    /**
+     * 类全名 -> 对象，泛型规范名 -> 泛型
+     */
+    private Map<String, ProtoObject> protoObjects = new HashMap<>();
+    private Map<String, ProtoGenericField> genericFields = new HashMap<>();
+
+    /**
+     * 泛型封装消息名 -> 泛型规范名，用于检查名称冲突
+     */
+    private Map<String, String> genericNameKeys = new HashMap<>();
+
+    /**
+     * 已放入缓存、待解析的对象及泛型
+     */
+    private Deque<Runnable> pending = new ArrayDeque<>();
+
+
+    ElementProtoParser(ProcessingEnvironment processingEnv, ElementTypeMapper typeMapper, String commentType,
+                       String commentMethod) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.collectionType = types.erasure(elements.getTypeElement("java.util.Collection").asType());
+        this.mapType = types.erasure(elements.getTypeElement("java.util.Map").asType());
+        this.typeMapper = typeMapper;
+        this.commentType = commentType;
+        this.commentMethod = commentMethod;
+    }
+
+    /**
+     * 解析全部服务接口，不包含方法的接口忽略
+     */
+    List<ProtoService> parse(List<TypeElement> serviceElements) {
+        List<ProtoService> protoServices = new ArrayList<>(serviceElements.size());
+        for (TypeElement serviceElement : serviceElements) {
+            List<ExecutableElement> methodElements = ElementFilter.methodsIn(serviceElement.getEnclosedElements());
+            if (methodElements.isEmpty()) {
+                continue;
+            }
+
+            ProtoService protoService = new ProtoService(serviceElement.getSimpleName().toString(),
+                    elements.getPackageOf(serviceElement).getQualifiedName().toString());
+            protoService.setComment(getComment(serviceElement));
+            List<ProtoMethod> protoMethods = new ArrayList<>(methodElements.size());
+            for (ExecutableElement methodElement : methodElements) {
+                protoMethods.add(parseMethod(serviceElement, methodElement));
+            }
+            protoService.setProtoMethods(protoMethods);
+            parsePending();
+            protoServices.add(protoService);
+        }
+        return protoServices;
+    }
+
+    private ProtoMethod parseMethod(TypeElement serviceElement, ExecutableElement methodElement) {
+        if (methodElement.getParameters().size() > 1) {
+            throw new RuntimeException("More then one parameter in the method [" + methodElement.getSimpleName() +
+                    "] of service [" + serviceElement.getSimpleName() + "].");
+        }
+
+        ProtoMethod protoMethod = new ProtoMethod(methodElement.getSimpleName().toString());
+        protoMethod.setComment(getComment(methodElement));
+        if (methodElement.getParameters().size() == 1) {
+            TypeMirror parameterType = methodElement.getParameters().get(0).asType();
+            protoMethod.setParameterProtoObject(parseObject(asTypeElement(parameterType, methodElement)));
+        }
+        if (methodElement.getReturnType().getKind() != TypeKind.VOID) {
+            TypeMirror returnType = methodElement.getReturnType();
+            protoMethod.setReturnProtoObject(parseObject(asTypeElement(returnType, methodElement)));
+        }
+        return protoMethod;
+    }
+
+    /**
+     * 解析队列中的全部对象及泛型，解析过程中新发现的类型继续放入队列
+     */
+    private void parsePending() {
+        while (!pending.isEmpty()) {
+            pending.pop().run();
+        }
+    }
+
+    private ProtoObject parseObject(TypeElement typeElement) {
+        return parseObjectOrEnum(typeElement, ProtoFieldType.OBJECT);
+    }
+
+    /**
+     * 枚举直接解析，对象放入待解析队列
+     */
+    private ProtoObject parseObjectOrEnum(TypeElement typeElement, ProtoFieldType pfType) {
+        String qualifiedName = typeElement.getQualifiedName().toString();
+        ProtoObject protoObject = protoObjects.get(qualifiedName);
+        if (protoObject != null) {
+            return protoObject;
+        }
+
+        protoObject = new ProtoObject(typeElement.getSimpleName().toString(),
+                typeElement.getKind() == ElementKind.ENUM);
+        protoObject.setComment(getComment(typeElement));
+        protoObjects.put(qualifiedName, protoObject);
+        if (pfType == ProtoFieldType.OBJECT) {
+            ProtoObject current = protoObject;
+            pending.push(() -> doParseObject(current, typeElement));
+        } else if (pfType == ProtoFieldType.ENUM) {
+            doParseEnum(protoObject, typeElement);
+        } else {
+            throw new RuntimeException("PFType must be ProtoFieldType.OBJECT or ProtoFieldType.ENUM");
+        }
+        return protoObject;
+    }
+
+    private void doParseObject(ProtoObject protoObject, TypeElement typeElement) {
+        // 解析父类
+        TypeMirror superclass = typeElement.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superElement = (TypeElement) types.asElement(superclass);
+            if (!superElement.getQualifiedName().contentEquals("java.lang.Object")) {
+                protoObject.setSuperProtoObject(parseObject(superElement));
+            }
+        }
+
+        // 解析类字段
+        List<VariableElement> fieldElements = ElementFilter.fieldsIn(typeElement.getEnclosedElements());
+        List<ProtoField> protoFields = new ArrayList<>(fieldElements.size());
+        for (VariableElement fieldElement : fieldElements) {
+            protoFields.add(parseField(typeElement, fieldElement));
+        }
+        protoObject.setProtoFields(protoFields);
+    }
+
+    /**
+     * 与 Class#getFields 一致取全部公共字段：先按声明顺序取本类的，再按名称取继承的
+     */
+    private void doParseEnum(ProtoObject protoObject, TypeElement typeElement) {
+        List<ProtoField> protoFields = new ArrayList<>();
+        for (VariableElement fieldElement : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+            if (fieldElement.getModifiers().contains(Modifier.PUBLIC)) {
+                protoFields.add(newProtoField(fieldElement));
+            }
+        }
+
+        List<VariableElement> inheritedFields = new ArrayList<>();
+        for (VariableElement fieldElement : ElementFilter.fieldsIn(elements.getAllMembers(typeElement))) {
+            if (fieldElement.getModifiers().contains(Modifier.PUBLIC) &&
+                    !fieldElement.getEnclosingElement().equals(typeElement)) {
+                inheritedFields.add(fieldElement);
+            }
+        }
+        inheritedFields.sort(Comparator.comparing(fieldElement -> fieldElement.getSimpleName().toString()));
+        for (VariableElement fieldElement : inheritedFields) {
+            protoFields.add(newProtoField(fieldElement));
+        }
+        protoObject.setProtoFields(protoFields);
+    }
+
+    private ProtoField parseField(TypeElement owner, VariableElement fieldElement) {
+        ProtoField protoField = newProtoField(fieldElement);
+
+        TypeMirror fieldType = fieldElement.asType();
+        if (!isGeneric(fieldType)) {
+            ProtoTypeMapping typeMapping = typeMapper.map(fieldType);
+            if (typeMapping == null) {
+                throw new RuntimeException("Unsupported type [" + fieldType + "] in field[" +
+                        fieldElement.getSimpleName() + "] of Class[" + owner.getQualifiedName() + "].");
+            }
+            protoField.setTypeMapping(typeMapping);
+
+            // 解析非基础类型字段
+            if (typeMapping.isObjectOrEnum()) {
+                protoField.setProtoObject(parseObjectOrEnum((TypeElement) types.asElement(fieldType),
+                        typeMapping.getProtoFieldType()));
+            }
+        } else {
+            validateGenericField(owner, fieldElement, fieldType);
+            protoField.setGeneric(parseGenericField(owner, fieldElement, (DeclaredType) fieldType));
+        }
+        return protoField;
+    }
+
+    private ProtoField newProtoField(VariableElement fieldElement) {
+        ProtoField protoField = new ProtoField(fieldElement.getSimpleName().toString());
+        protoField.setComment(getComment(fieldElement));
+        return protoField;
+    }
+
+    /**
+     * 解析范型（按规范名缓存）
+     */
+    private ProtoGenericField parseGenericField(TypeElement owner, VariableElement fieldElement, DeclaredType type) {
+        String key = getGenericKey(type);
+        ProtoGenericField genericField = genericFields.get(key);
+        if (genericField != null) {
+            return genericField;
+        }
+
+        List<? extends TypeMirror> arguments = type.getTypeArguments();
+        List<String> classNames = new ArrayList<>();
+        ProtoGenericField nestedGeneric = null;
+        for (TypeMirror argument : arguments) {
+            if (isGeneric(argument)) {
+                nestedGeneric = parseGenericField(owner, fieldElement, (DeclaredType) argument);
+            } else {
+                classNames.add(types.asElement(argument).getSimpleName().toString());
+            }
+        }
+
+        TypeElement rawElement = (TypeElement) type.asElement();
+        String typeName = GenericNameTable.buildTypeName(rawElement.getSimpleName().toString(), classNames,
+                arguments.size(), nestedGeneric == null ? null : nestedGeneric.getTypeName());
+        String existing = genericNameKeys.putIfAbsent(typeName, key);
+        if (existing != null) {
+            throw new RuntimeException("Generic message name [" + typeName + "] of type [" + key +
+                    "] conflicts with type [" + existing + "].");
+        }
+
+        genericField = new ProtoGenericField(typeName, types.isAssignable(types.erasure(type), collectionType),
+                arguments.size());
+        for (int i = 0; i < arguments.size(); i++) {
+            if (isGeneric(arguments.get(i))) {
+                genericField.setGenericArgument(i);
+            }
+        }
+        genericFields.put(key, genericField);
+        ProtoGenericField current = genericField;
+        pending.push(() -> doParseFieldGeneric(current, owner, fieldElement, type));
+        return genericField;
+    }
+
+    private void doParseFieldGeneric(ProtoGenericField genericField, TypeElement owner, VariableElement fieldElement,
+                                     DeclaredType type) {
+        for (TypeMirror argument : type.getTypeArguments()) {
+            // 解析嵌套范型
+            if (isGeneric(argument)) {
+                genericField.setNestedGeneric(parseGenericField(owner, fieldElement, (DeclaredType) argument));
+                continue;
+            }
+
+            // 解析非泛型
+            ProtoTypeMapping typeMapping = typeMapper.map(argument);
+            genericField.addTypeMapping(typeMapping);
+
+            // 如果是非一般数据类型，则进一步解析
+            if (typeMapping.isObjectOrEnum()) {
+                genericField.addProtoObject(parseObjectOrEnum((TypeElement) types.asElement(argument),
+                        typeMapping.getProtoFieldType()));
+            }
+        }
+    }
+
+    private void validateGenericField(TypeElement owner, VariableElement fieldElement, TypeMirror genericType) {
+        Deque<TypeMirror> pendingTypes = new ArrayDeque<>();
+        pendingTypes.push(genericType);
+        while (!pendingTypes.isEmpty()) {
+            TypeMirror type = pendingTypes.pop();
+            // No:  List list = ...;  or  Map map = ...;
+            if (type.getKind() != TypeKind.DECLARED || ((DeclaredType) type).getTypeArguments().isEmpty()) {
+                throw new RuntimeException("No parameter type is specified in generic field[" +
+                        fieldElement.getSimpleName() + "] of Class[" + owner.getQualifiedName() + "].");
+            }
+
+            for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                // No:  List<?> list = ...;  or  Map<?, ?> map = ...;
+                if (argument.getKind() == TypeKind.WILDCARD) {
+                    throw new RuntimeException("Wildcard is not support for generic field type in field[" +
+                            fieldElement.getSimpleName() + "] of Class[" + owner.getQualifiedName() + "].");
+                }
+                if (isGeneric(argument)) {
+                    pendingTypes.push(argument);
+                } else if (typeMapper.map(argument) == null) {
+                    throw new RuntimeException("Unsupported type [" + argument + "] in field[" +
+                            fieldElement.getSimpleName() + "] of Class[" + owner.getQualifiedName() + "].");
+                }
+            }
+        }
+    }
+
+    /**
+     * 泛型的规范名（原始类型及参数类型的全名，不含类型注解）
+     */
+    private String getGenericKey(DeclaredType type) {
+        StringBuilder key = new StringBuilder(((TypeElement) type.asElement()).getQualifiedName());
+        key.append('<');
+        List<? extends TypeMirror> arguments = type.getTypeArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            TypeMirror argument = arguments.get(i);
+            if (isGeneric(argument)) {
+                key.append(getGenericKey((DeclaredType) argument));
+            } else {
+                key.append(((TypeElement) types.asElement(argument)).getQualifiedName());
+            }
+        }
+        return key.append('>').toString();
+    }
+
+    private boolean isGeneric(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeMirror erasure = types.erasure(type);
+        return types.isAssignable(erasure, collectionType) || types.isAssignable(erasure, mapType);
+    }
+
+    /**
+     * 方法的参数及返回值只能为类或接口
+     */
+    private TypeElement asTypeElement(TypeMirror type, ExecutableElement methodElement) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            throw new RuntimeException("Unsupported type [" + type + "] in the method [" +
+                    methodElement.getSimpleName() + "] of service [" +
+                    methodElement.getEnclosingElement().getSimpleName() + "].");
+        }
+        return (TypeElement) types.asElement(type);
+    }
+
+    /**
+     * 获取元素上注释注解的值
+     */
+    private String getComment(Element element) {
+        if (commentType == null) {
+            return null;
+        }
+
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationElement = (TypeElement) annotation.getAnnotationType().asElement();
+            if (!annotationElement.getQualifiedName().contentEquals(commentType)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                    elements.getElementValuesWithDefaults(annotation).entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals(commentMethod)) {
+                    String comment = String.valueOf(entry.getValue().getValue());
+                    return StringUtils.hasText(comment) ? comment : null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,188 @@
+package com.dld.hll.protobuf.generator.processor;
+
+import com.dld.hll.protobuf.generator.entity.ProtoFieldType;
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+import com.dld.hll.protobuf.generator.mapper.TypeMapperRegistry;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.*;
+
+/**
+ * 源码元素类型到proto类型的映射，查找规则与 {@link TypeMapperRegistry} 一致
+ *
+ * 查找顺序：
+ * 1. 按类全名精确匹配自定义映射
+ * 2. 不是本次编译的类型、且能由处理器的类加载器加载时，交由 TypeMapperRegistry（内置映射、自定义 TypeMapper 及父类匹配）
+ * 3. 本次编译的类型无法加载，自定义 TypeMapper 对其不生效：枚举为 ENUM，否则按父类、接口（元素）匹配映射表，都不匹配时为 OBJECT
+ *
+ * @author Chen Hui
+ */
+class ElementTypeMapper {
+
+    private static final ProtoTypeMapping ENUM_MAPPING = ProtoTypeMapping.of(ProtoFieldType.ENUM);
+    private static final ProtoTypeMapping OBJECT_MAPPING = ProtoTypeMapping.of(ProtoFieldType.OBJECT);
+
+    private Elements elements;
+    private Types types;
+    private ClassLoader classLoader;
+    private TypeMapperRegistry registry;
+
+    /**
+     * 类全名 -> 自定义映射
+     */
+    private Map<String, ProtoTypeMapping> customMappings;
+
+    /**
+     * 本次编译的类型全名（源码可能与类加载器中的类不一致，不加载）
+     */
+    private Set<String> sourceNames;
+
+    private Map<String, ProtoTypeMapping> cache = new HashMap<>();
+
+
+    ElementTypeMapper(ProcessingEnvironment processingEnv, ClassLoader classLoader, TypeMapperRegistry registry,
+                      Map<String, ProtoTypeMapping> customMappings, Set<String> sourceNames) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.classLoader = classLoader;
+        this.registry = registry;
+        this.customMappings = customMappings;
+        this.sourceNames = sourceNames;
+    }
+
+    /**
+     * @return 不支持的类型（如数组、类型变量）返回 null
+     */
+    ProtoTypeMapping map(TypeMirror type) {
+        switch (type.getKind()) {
+            case DOUBLE:
+                return registry.map(double.class);
+            case FLOAT:
+                return registry.map(float.class);
+            case LONG:
+                return registry.map(long.class);
+            case INT:
+                return registry.map(int.class);
+            case SHORT:
+                return registry.map(short.class);
+            case BYTE:
+                return registry.map(byte.class);
+            case CHAR:
+                return registry.map(char.class);
+            case BOOLEAN:
+                return registry.map(boolean.class);
+            case DECLARED:
+                return map((TypeElement) ((DeclaredType) type).asElement());
+            default:
+                return null;
+        }
+    }
+
+    private ProtoTypeMapping map(TypeElement typeElement) {
+        String qualifiedName = typeElement.getQualifiedName().toString();
+        ProtoTypeMapping mapping = cache.get(qualifiedName);
+        if (mapping == null) {
+            mapping = resolve(typeElement);
+            cache.put(qualifiedName, mapping);
+        }
+        return mapping;
+    }
+
+    private ProtoTypeMapping resolve(TypeElement typeElement) {
+        ProtoTypeMapping mapping = customMappings.get(typeElement.getQualifiedName().toString());
+        if (mapping != null) {
+            return mapping;
+        }
+
+        Class<?> clazz = loadClass(typeElement);
+        if (clazz != null) {
+            return registry.map(clazz);
+        }
+
+        if (typeElement.getKind() == ElementKind.ENUM) {
+            return ENUM_MAPPING;
+        }
+        mapping = resolveHierarchy(typeElement);
+        return mapping != null ? mapping : OBJECT_MAPPING;
+    }
+
+    /**
+     * 先按父类由近及远，再按接口广度优先匹配
+     */
+    private ProtoTypeMapping resolveHierarchy(TypeElement typeElement) {
+        Deque<TypeElement> interfaces = new ArrayDeque<>(getInterfaces(typeElement));
+        for (TypeElement superclass = getSuperclass(typeElement); superclass != null;
+             superclass = getSuperclass(superclass)) {
+            ProtoTypeMapping mapping = getExactMapping(superclass);
+            if (mapping != null) {
+                return mapping;
+            }
+            interfaces.addAll(getInterfaces(superclass));
+        }
+
+        Set<TypeElement> visited = new HashSet<>();
+        while (!interfaces.isEmpty()) {
+            TypeElement superInterface = interfaces.poll();
+            if (visited.add(superInterface)) {
+                ProtoTypeMapping mapping = getExactMapping(superInterface);
+                if (mapping != null) {
+                    return mapping;
+                }
+                interfaces.addAll(getInterfaces(superInterface));
+            }
+        }
+        return null;
+    }
+
+    private ProtoTypeMapping getExactMapping(TypeElement typeElement) {
+        ProtoTypeMapping mapping = customMappings.get(typeElement.getQualifiedName().toString());
+        if (mapping != null) {
+            return mapping;
+        }
+        Class<?> clazz = loadClass(typeElement);
+        return clazz != null ? registry.getExactMapping(clazz) : null;
+    }
+
+    /**
+     * @return 没有或为 Object 时返回 null
+     */
+    private TypeElement getSuperclass(TypeElement typeElement) {
+        TypeMirror superclass = typeElement.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement superElement = (TypeElement) types.asElement(superclass);
+        return superElement.getQualifiedName().contentEquals("java.lang.Object") ? null : superElement;
+    }
+
+    private List<TypeElement> getInterfaces(TypeElement typeElement) {
+        List<TypeElement> interfaces = new ArrayList<>();
+        for (TypeMirror superInterface : typeElement.getInterfaces()) {
+            if (superInterface.getKind() == TypeKind.DECLARED) {
+                interfaces.add((TypeElement) types.asElement(superInterface));
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * 本次编译的类型，或无法加载（不在处理器类路径中、依赖缺失）时返回 null
+     */
+    private Class<?> loadClass(TypeElement typeElement) {
+        if (sourceNames.contains(typeElement.getQualifiedName().toString())) {
+            return null;
+        }
+        try {
+            return Class.forName(elements.getBinaryName(typeElement).toString(), false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.dld.hll.protobuf.generator.processor;
+
+import com.dld.hll.protobuf.generator.ProtoCitationAnalyzer;
+import com.dld.hll.protobuf.generator.ProtoFileGenerator;
+import com.dld.hll.protobuf.generator.ProtoOrdering;
+import com.dld.hll.protobuf.generator.ProtoTypeTable;
+import com.dld.hll.protobuf.generator.entity.ProtoFieldType;
+import com.dld.hll.protobuf.generator.entity.ProtoService;
+import com.dld.hll.protobuf.generator.entity.ProtoTypeMapping;
+import com.dld.hll.protobuf.generator.mapper.TypeMapper;
+import com.dld.hll.protobuf.generator.mapper.TypeMapperRegistry;
+import com.dld.hll.protobuf.generator.util.StringUtils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 编译期生成proto文件的注解处理器，不需要加载服务类，也不需要额外启动JVM
+ * 在 javac 编译时由源码元素构建与反射解析相同的模型，在最后一轮与 ProtoExecutor 使用同一流程
+ * （ProtoCitationAnalyzer、ProtoTypeTable、ProtoFileGenerator）通过 Filer 输出proto文件（默认 SOURCE_OUTPUT 目录）
+ *
+ * 需要显式指定才运行（没有在 META-INF/services 注册，只依赖本库运行 ProtoExecutor 的项目编译时不受影响）：
+ * javac -processor com.dld.hll.protobuf.generator.processor.ProtoServiceProcessor -Aprotobuf.projectName=xxx ...
+ * Maven 中在 maven-compiler-plugin 的 annotationProcessors 中指定（同时需要列出项目使用的其他处理器，如 lombok）
+ *
+ * 可选参数：
+ * protobuf.projectName       用于生成Common文件名，与 ProtoExecutor 一致
+ * protobuf.scanPackage       只处理指定包（含子包）中的接口
+ * protobuf.namePattern       接口名满足的模式，默认 .*Service$
+ * protobuf.commentAnnotation 注释注解类全名
+ * protobuf.commentMethod     获取注释值的方法名，默认 value
+ * protobuf.outputPackage     输出proto文件的相对路径（包名形式）
+ * protobuf.ordering          输出顺序（{@link ProtoOrdering}），默认 DISCOVERY，方法及字段总是按源码声明顺序
+ * protobuf.typeMappings      自定义类型映射，逗号分隔，如
+ *                            java.util.UUID=BYTES,com.x.Money=google.type.Money:google/type/money.proto
+ *                            （等号后为 ProtoFieldType 名称，或自定义proto类型名及可选的导入文件）
+ * protobuf.typeMappers       自定义 {@link TypeMapper} 类全名，逗号分隔，需有无参构造器且在处理器类路径中，
+ *                            只对能加载的类（非本次编译的类）生效
+ *
+ * 增量编译时只会处理本次编译的类型，全部服务接口名记录在 CLASS_OUTPUT 的 {@link #SERVICES_RESOURCE} 中，
+ * 下次编译时合并仍然存在且满足条件的服务，Common文件的内容以合并后的全部服务为准
+ *
+ * @author Chen Hui
+ */
+public class ProtoServiceProcessor extends AbstractProcessor {
+
+    static final String SERVICES_RESOURCE = "META-INF/protobuf-generator/services.list";
+
+    private static final Set<String> SUPPORTED_OPTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "protobuf.projectName", "protobuf.scanPackage", "protobuf.namePattern", "protobuf.commentAnnotation",
+            "protobuf.commentMethod", "protobuf.outputPackage", "protobuf.ordering", "protobuf.typeMappings",
+            "protobuf.typeMappers")));
+
+    /**
+     * 全部轮次中满足条件的服务接口类全名
+     */
+    private Set<String> serviceNames = new LinkedHashSet<>();
+
+    /**
+     * 全部轮次中本次编译的类型全名（含内部类型）
+     */
+    private Set<String> sourceNames = new HashSet<>();
+
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return SUPPORTED_OPTIONS;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!roundEnv.processingOver()) {
+            for (TypeElement typeElement : ElementFilter.typesIn(roundEnv.getRootElements())) {
+                addSourceNames(typeElement);
+                if (isMeet(typeElement)) {
+                    serviceNames.add(typeElement.getQualifiedName().toString());
+                }
+            }
+            return false;
+        }
+
+        try {
+            List<String> allServiceNames = mergeServiceNames();
+            if (!allServiceNames.isEmpty()) {
+                generate(allServiceNames);
+            }
+        } catch (RuntimeException | IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, String.valueOf(e.getMessage()));
+        }
+        return false;
+    }
+
+    private void addSourceNames(TypeElement typeElement) {
+        sourceNames.add(typeElement.getQualifiedName().toString());
+        for (TypeElement memberElement : ElementFilter.typesIn(typeElement.getEnclosedElements())) {
+            addSourceNames(memberElement);
+        }
+    }
+
+    private boolean isMeet(TypeElement element) {
+        if (element.getKind() != ElementKind.INTERFACE) {
+            return false;
+        }
+        String scanPackage = getOption("protobuf.scanPackage", null);
+        if (scanPackage != null && !element.getQualifiedName().toString().startsWith(scanPackage + ".")) {
+            return false;
+        }
+        return Pattern.compile(getOption("protobuf.namePattern", ".*Service$")).matcher(element.getSimpleName())
+                .matches();
+    }
+
+    /**
+     * 合并上次记录的服务（本次未编译、仍然存在且满足条件）及本次编译的服务，并记录合并结果
+     */
+    private List<String> mergeServiceNames() throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        Set<String> allServiceNames = new LinkedHashSet<>();
+        for (String serviceName : readServiceNames()) {
+            if (sourceNames.contains(serviceName)) {
+                continue;
+            }
+            TypeElement element = elements.getTypeElement(serviceName);
+            if (element != null && isMeet(element)) {
+                allServiceNames.add(serviceName);
+            }
+        }
+        allServiceNames.addAll(serviceNames);
+
+        FileObject fileObject = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                SERVICES_RESOURCE);
+        try (Writer writer = new OutputStreamWriter(fileObject.openOutputStream(), StandardCharsets.UTF_8)) {
+            for (String serviceName : allServiceNames) {
+                writer.write(serviceName);
+                writer.write('\n');
+            }
+        }
+        return new ArrayList<>(allServiceNames);
+    }
+
+    /**
+     * 上次编译记录的服务接口名，没有记录时为空
+     */
+    private List<String> readServiceNames() {
+        List<String> previous = new ArrayList<>();
+        try {
+            FileObject fileObject = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    SERVICES_RESOURCE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(fileObject.openInputStream(),
+                    StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (StringUtils.hasText(line)) {
+                        previous.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // 首次编译，或输出目录中没有记录
+        }
+        return previous;
+    }
+
+    private void generate(List<String> allServiceNames) {
+        Elements elements = processingEnv.getElementUtils();
+        ProtoOrdering ordering = ProtoOrdering.valueOf(getOption("protobuf.ordering", ProtoOrdering.DISCOVERY.name()));
+        List<TypeElement> serviceElements = new ArrayList<>(allServiceNames.size());
+        for (String serviceName : allServiceNames) {
+            serviceElements.add(elements.getTypeElement(serviceName));
+        }
+        // 与 ProtoInfoReader 一致，稳定顺序时服务按接口全名排序
+        if (ordering.isStable()) {
+            serviceElements.sort(Comparator.comparing(element -> elements.getBinaryName(element).toString()));
+        }
+
+        ElementProtoParser parser = new ElementProtoParser(processingEnv, createTypeMapper(),
+                getOption("protobuf.commentAnnotation", null), getOption("protobuf.commentMethod", "value"));
+        List<ProtoService> protoServices = parser.parse(serviceElements);
+        if (protoServices.isEmpty()) {
+            return;
+        }
+
+        ProtoTypeTable typeTable = new ProtoCitationAnalyzer(ordering == ProtoOrdering.TOPOLOGICAL)
+                .analyze(protoServices);
+        String commonProtoFileName = getCommonProtoFileName(getOption("protobuf.projectName", "proto"));
+        new ProtoFileGenerator(typeTable, null, commonProtoFileName).generate(this::openOutputStream);
+    }
+
+    private OutputStream openOutputStream(String fileName) {
+        try {
+            return processingEnv.getFiler().createResource(StandardLocation.SOURCE_OUTPUT,
+                    getOption("protobuf.outputPackage", ""), fileName).openOutputStream();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write proto file [" + e.getMessage() + "]", e);
+        }
+    }
+
+    private ElementTypeMapper createTypeMapper() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Map<String, ProtoTypeMapping> customMappings = parseTypeMappings(getOption("protobuf.typeMappings", null));
+
+        // 能加载的类的自定义映射也交由 TypeMapperRegistry，使其父类匹配规则与反射解析一致
+        Map<Class<?>, ProtoTypeMapping> classMappings = new HashMap<>();
+        for (Map.Entry<String, ProtoTypeMapping> entry : customMappings.entrySet()) {
+            try {
+                classMappings.put(Class.forName(entry.getKey(), false, classLoader), entry.getValue());
+            } catch (ClassNotFoundException | LinkageError e) {
+                // 本次编译的类或不在处理器类路径中，只按类全名匹配
+            }
+        }
+
+        List<TypeMapper> typeMappers = new ArrayList<>();
+        String typeMapperNames = getOption("protobuf.typeMappers", null);
+        if (typeMapperNames != null) {
+            for (String typeMapperName : typeMapperNames.split(",")) {
+                try {
+                    typeMappers.add((TypeMapper) Class.forName(typeMapperName.trim(), true, classLoader)
+                            .newInstance());
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new RuntimeException("Could not create type mapper [" + typeMapperName.trim() + "]", e);
+                }
+            }
+        }
+
+        TypeMapperRegistry registry = classMappings.isEmpty() && typeMappers.isEmpty() ?
+                TypeMapperRegistry.DEFAULT : new TypeMapperRegistry(classMappings, typeMappers);
+        return new ElementTypeMapper(processingEnv, classLoader, registry, customMappings, sourceNames);
+    }
+
+    /**
+     * 解析 类全名=ProtoFieldType名称 或 类全名=proto类型名[:导入文件]
+     */
+    private Map<String, ProtoTypeMapping> parseTypeMappings(String typeMappings) {
+        Map<String, ProtoTypeMapping> mappings = new HashMap<>();
+        if (typeMappings == null) {
+            return mappings;
+        }
+
+        for (String typeMapping : typeMappings.split(",")) {
+            int index = typeMapping.indexOf('=');
+            if (index <= 0) {
+                throw new RuntimeException("Illegal type mapping [" + typeMapping + "] of option protobuf.typeMappings");
+            }
+            String javaType = typeMapping.substring(0, index).trim();
+            String protoType = typeMapping.substring(index + 1).trim();
+            mappings.put(javaType, parseProtoType(protoType));
+        }
+        return mappings;
+    }
+
+    private ProtoTypeMapping parseProtoType(String protoType) {
+        for (ProtoFieldType protoFieldType : ProtoFieldType.values()) {
+            if (protoFieldType != ProtoFieldType.CUSTOM && protoFieldType.name().equals(protoType)) {
+                return ProtoTypeMapping.of(protoFieldType);
+            }
+        }
+        int index = protoType.indexOf(':');
+        return index == -1 ? ProtoTypeMapping.custom(protoType) :
+                ProtoTypeMapping.custom(protoType.substring(0, index), protoType.substring(index + 1));
+    }
+
+    /**
+     * 与 ProtoExecutor 中Common文件名规则一致
+     */
+    private String getCommonProtoFileName(String projectName) {
+        StringBuilder commonFileName = new StringBuilder();
+        for (String str : projectName.split("[-_]")) {
+            commonFileName.append(StringUtils.capitalize(str));
+        }
+        commonFileName.append("Common");
+        return commonFileName.toString();
+    }
+
+    private String getOption(String name, String defaultValue) {
+        String value = processingEnv.getOptions().get(name);
+        return StringUtils.hasText(value) ? value : defaultValue;
+    }
+}
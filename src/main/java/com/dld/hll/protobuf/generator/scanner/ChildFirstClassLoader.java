@@ -0,0 +1,59 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Set;
+
+/**
+ * 优先从自身路径加载类的隔离类加载器
+ * JDK 的类以及指定的共享类（如注释注解、继承接口）仍委托给父加载器，保证与调用方的 Class 一致
+ *
+ * @author Chen Hui
+ */
+class ChildFirstClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Set<String> sharedClassNames;
+
+
+    ChildFirstClassLoader(URL[] urls, ClassLoader parent, Set<String> sharedClassNames) {
+        super(urls, parent);
+        this.sharedClassNames = sharedClassNames;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (isParentFirst(name)) {
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    clazz = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    clazz = getParent().loadClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : super.getResource(name);
+    }
+
+    private boolean isParentFirst(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") ||
+                sharedClassNames.contains(name);
+    }
+}
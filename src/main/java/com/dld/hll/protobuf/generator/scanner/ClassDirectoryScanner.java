@@ -0,0 +1,131 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 扫描编译输出目录（如 target/classes）中所有的服务接口
+ * 与 {@link JarFileScanner} 一致，先读取类文件头预筛选，再加载类
+ *
+ * @author Chen Hui
+ */
+@Getter
+public class ClassDirectoryScanner extends SelectableScanner {
+
+    private Path classDirectory;
+    private ServiceClassLoader serviceClassLoader;
+    private String scanPackage;
+
+
+    public ClassDirectoryScanner(Path classDirectory, String scanPackage, ServiceClassLoader serviceClassLoader) {
+        if (!Files.isDirectory(classDirectory)) {
+            throw new RuntimeException("The class directory [" + classDirectory + "] doesn't exists!");
+        }
+        this.classDirectory = classDirectory;
+        this.scanPackage = scanPackage;
+        this.serviceClassLoader = serviceClassLoader;
+    }
+
+    @Override
+    public void scanServices(Consumer<Class<?>> consumer) {
+        scanWithIndex(classDirectory, scanPackage, serviceClassLoader, this::doScanServices, consumer);
+    }
+
+    private void doScanServices(Consumer<Class<?>> consumer) {
+        List<ClassFileHeader> candidates = new ArrayList<>();
+        Map<String, ClassFileHeader> candidateHeaders = new HashMap<>();
+        for (Path classFile : listClassFiles()) {
+            if (isNameAndPackageMeet(classFile)) {
+                ClassFileHeader header = readHeader(classFile);
+                if (header.isInterface()) {
+                    candidates.add(header);
+                    candidateHeaders.put(header.getClassName(), header);
+                }
+            }
+        }
+
+        Function<String, ClassFileHeader> headerResolver = getHeaderResolver(candidateHeaders);
+        for (ClassFileHeader candidate : candidates) {
+            if (isPreAcceptable(candidate, headerResolver)) {
+                Class<?> serviceClass = serviceClassLoader.loadClass(candidate.getClassName());
+                if (serviceClass.isInterface() && isAcceptable(serviceClass)) {
+                    consumer.accept(serviceClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按路径排序的全部类文件
+     */
+    private List<Path> listClassFiles() {
+        try (Stream<Path> paths = Files.walk(classDirectory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isNameAndPackageMeet(Path classFile) {
+        String name = getEntryName(classFile);
+        if (name.contains("$")) {
+            return false;
+        }
+        if (scanPackage != null && !name.startsWith(scanPackage)) {
+            return false;
+        }
+        return isNameAcceptable(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+    }
+
+    /**
+     * 相对类目录的路径，统一使用 '/' 分隔（与Jar包条目名称一致）
+     */
+    private String getEntryName(Path classFile) {
+        return classDirectory.relativize(classFile).toString().replace(classFile.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * 按类名从类目录中读取文件头（结果缓存，包括不存在的情况）
+     */
+    private Function<String, ClassFileHeader> getHeaderResolver(Map<String, ClassFileHeader> knownHeaders) {
+        Map<String, ClassFileHeader> headers = new HashMap<>(knownHeaders);
+        return className -> {
+            if (headers.containsKey(className)) {
+                return headers.get(className);
+            }
+
+            Path classFile = classDirectory.resolve(className.replace(".", classDirectory.getFileSystem().getSeparator())
+                    + ".class");
+            ClassFileHeader header = Files.exists(classFile) ? readHeader(classFile) : null;
+            headers.put(className, header);
+            return header;
+        };
+    }
+
+    private ClassFileHeader readHeader(Path classFile) {
+        try (InputStream inputStream = Files.newInputStream(classFile)) {
+            return ClassFileHeader.read(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        serviceClassLoader.close();
+    }
+}
@@ -0,0 +1,191 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 类文件头信息（访问标识、类名、父类及直接父接口），需要时继续读取字段及方法的声明顺序
+ * 直接从 class 文件字节中读取，默认只读取到接口表为止，不需要加载类
+ *
+ * @author Chen Hui
+ */
+@Getter
+public class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_INTERFACE = 0x0200;
+
+    private int accessFlags;
+
+    /**
+     * 类全名（com.example.UserService）
+     */
+    private String className;
+
+    private String superClassName;
+
+    /**
+     * 直接父接口全名
+     */
+    private List<String> interfaceNames;
+
+    /**
+     * 按类文件中的顺序（即源码声明顺序）排列的字段名，只在读取成员时有值
+     */
+    private List<String> fieldNames;
+
+    /**
+     * 按类文件中的顺序排列的方法签名（方法名 + 描述符，如 getUser(J)Lcom/example/User;），只在读取成员时有值
+     */
+    private List<String> methodSignatures;
+
+
+    private ClassFileHeader() {
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * 与 {@link Class#getSimpleName()} 一致（仅适用于非内部类）
+     */
+    public String getSimpleName() {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * 从输入流中读取类文件头，读取完接口表后即停止，不会关闭输入流
+     */
+    public static ClassFileHeader read(InputStream inputStream) throws IOException {
+        return read(inputStream, false);
+    }
+
+    /**
+     * 从输入流中读取类文件头，不会关闭输入流
+     *
+     * @param isReadMembers 是否继续读取字段表及方法表
+     */
+    public static ClassFileHeader read(InputStream inputStream, boolean isReadMembers) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor_version, major_version
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        // 常量池，只保留 Utf8 和 Class 常量
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8s = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8s[i] = in.readUTF();
+                    break;
+                case 7:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    in.skipBytes(2);
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    in.skipBytes(4);
+                    break;
+                case 5:
+                case 6:
+                    // Long 和 Double 占用两个常量池位置
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag [" + tag + "]");
+            }
+        }
+
+        ClassFileHeader header = new ClassFileHeader();
+        header.accessFlags = in.readUnsignedShort();
+        header.className = getClassName(utf8s, classNameIndexes, in.readUnsignedShort());
+        header.superClassName = getClassName(utf8s, classNameIndexes, in.readUnsignedShort());
+
+        int interfacesCount = in.readUnsignedShort();
+        List<String> interfaceNames = new ArrayList<>(interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames.add(getClassName(utf8s, classNameIndexes, in.readUnsignedShort()));
+        }
+        header.interfaceNames = Collections.unmodifiableList(interfaceNames);
+
+        if (isReadMembers) {
+            header.fieldNames = Collections.unmodifiableList(readMembers(in, utf8s, false));
+            header.methodSignatures = Collections.unmodifiableList(readMembers(in, utf8s, true));
+        }
+        return header;
+    }
+
+    /**
+     * 读取字段表或方法表，跳过全部属性
+     *
+     * @param isWithDescriptor 是否在名称后拼接描述符
+     */
+    private static List<String> readMembers(DataInputStream in, String[] utf8s, boolean isWithDescriptor)
+            throws IOException {
+        int membersCount = in.readUnsignedShort();
+        List<String> members = new ArrayList<>(membersCount);
+        for (int i = 0; i < membersCount; i++) {
+            // access_flags
+            in.readUnsignedShort();
+            String name = utf8s[in.readUnsignedShort()];
+            String descriptor = utf8s[in.readUnsignedShort()];
+            members.add(isWithDescriptor ? name + descriptor : name);
+
+            int attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                in.readUnsignedShort();
+                skipFully(in, in.readInt());
+            }
+        }
+        return members;
+    }
+
+    /**
+     * 属性可能较长（如方法的 Code 属性），skipBytes 可能跳过较少的字节
+     */
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                in.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static String getClassName(String[] utf8s, int[] classNameIndexes, int classIndex) {
+        if (classIndex == 0) {
+            return null;
+        }
+        return utf8s[classNameIndexes[classIndex]].replace('/', '.');
+    }
+}
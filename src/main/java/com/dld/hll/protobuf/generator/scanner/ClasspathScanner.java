@@ -0,0 +1,101 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * 扫描整个类路径（多个Jar包及类目录）中所有的服务接口
+ * 每个路径在有界线程池中并发扫描（扫描索引按路径分别生效），结果按路径顺序合并并按类名去重
+ *
+ * @author Chen Hui
+ */
+@Getter
+public class ClasspathScanner extends SelectableScanner {
+
+    private List<String> classpath;
+    private ServiceClassLoader serviceClassLoader;
+    private String scanPackage;
+
+    /**
+     * 并发扫描的线程数
+     */
+    @Setter
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+
+    /**
+     * @param serviceClassLoader 能加载全部路径中类的类加载器，参考 {@link ServiceClassLoader#ofClasspath}
+     */
+    public ClasspathScanner(List<String> classpath, String scanPackage, ServiceClassLoader serviceClassLoader) {
+        this.classpath = classpath;
+        this.scanPackage = scanPackage;
+        this.serviceClassLoader = serviceClassLoader;
+    }
+
+    /**
+     * 按路径顺序回调，前面的路径扫描完成即回调其结果，不等待后面的路径
+     */
+    @Override
+    public void scanServices(Consumer<Class<?>> consumer) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, classpath.size())));
+        try {
+            List<Future<List<Class<?>>>> futures = new ArrayList<>();
+            for (String path : classpath) {
+                SelectableScanner rootScanner = createRootScanner(Paths.get(path));
+                futures.add(executorService.submit(() -> rootScanner.scanServices()));
+            }
+
+            // 按路径顺序合并，同名的类只保留第一个
+            Set<String> classNames = new HashSet<>();
+            for (Future<List<Class<?>>> future : futures) {
+                for (Class<?> serviceClass : future.get()) {
+                    if (classNames.add(serviceClass.getName())) {
+                        consumer.accept(serviceClass);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 单个路径的扫描器，与当前扫描器共用类加载器和选择器
+     */
+    private SelectableScanner createRootScanner(Path path) {
+        SelectableScanner rootScanner;
+        if (Files.isDirectory(path)) {
+            rootScanner = new ClassDirectoryScanner(path, scanPackage, serviceClassLoader);
+        } else {
+            rootScanner = new JarFileScanner(path.toString(), scanPackage, serviceClassLoader);
+        }
+        if (getSelectors() != null) {
+            getSelectors().forEach(rootScanner::addSelector);
+        }
+        rootScanner.setScanIndex(getScanIndex());
+        return rootScanner;
+    }
+
+    @Override
+    public void close() {
+        serviceClassLoader.close();
+    }
+}
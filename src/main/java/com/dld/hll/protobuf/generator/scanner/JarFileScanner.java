@@ -3,15 +3,19 @@ package com.dld.hll.protobuf.generator.scanner;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * 扫描Jar包中所有的服务接口
@@ -23,43 +27,97 @@ import java.util.jar.JarInputStream;
 public class JarFileScanner extends SelectableScanner {
 
     private String jarFile;
-    private URLClassLoader jcl;
+    private ServiceClassLoader serviceClassLoader;
     private String scanPackage;
 
 
-    public JarFileScanner(String jarFile, String scanPackage, boolean isNeedLoad) {
+    /**
+     * @param isNeedLoad       是否需要为Jar包创建隔离的类加载器
+     * @param sharedClassNames 需要与调用方共享的类，如注释注解及选择器中的父接口（isNeedLoad 为 false 时不使用）
+     */
+    public JarFileScanner(String jarFile, String scanPackage, boolean isNeedLoad,
+                          Collection<String> sharedClassNames) {
+        this(jarFile, scanPackage, isNeedLoad ? ServiceClassLoader.ofJar(jarFile, false, sharedClassNames) :
+                ServiceClassLoader.ofDefault());
+    }
+
+    public JarFileScanner(String jarFile, String scanPackage, ServiceClassLoader serviceClassLoader) {
         this.jarFile = jarFile;
         this.scanPackage = scanPackage;
-        if (isNeedLoad) {
-            try {
-                jcl = new URLClassLoader(new URL[]{new File(jarFile).toURI().toURL()},
-                        this.getClass().getClassLoader());
-            } catch (MalformedURLException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        this.serviceClassLoader = serviceClassLoader;
     }
 
+    /**
+     * 通过Jar包的中央目录遍历条目名称（不解压任何内容），只打开满足包名和类名条件的条目读取类文件头，
+     * 父接口的文件头按需从Jar包中读取；只有通过预筛选的接口才会被加载
+     */
     @Override
-    public List<Class<?>> scanServices() {
-        ArrayList<Class<?>> classes = new ArrayList<>();
-        try (JarInputStream inputStream = new JarInputStream(new FileInputStream(jarFile))) {
-            JarEntry entry;
-            while ((entry = inputStream.getNextJarEntry()) != null) {
-                Class<?> serviceClass = getServiceClassIfMeet(entry);
+    public void scanServices(Consumer<Class<?>> consumer) {
+        scanWithIndex(Paths.get(jarFile), scanPackage, serviceClassLoader, this::doScanServices, consumer);
+    }
+
+    private void doScanServices(Consumer<Class<?>> consumer) {
+        List<ClassFileHeader> candidates = new ArrayList<>();
+        Map<String, ClassFileHeader> candidateHeaders = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isNameAndPackageMeet(entry)) {
+                    ClassFileHeader header = readHeader(zipFile, entry);
+                    if (header.isInterface()) {
+                        candidates.add(header);
+                        candidateHeaders.put(header.getClassName(), header);
+                    }
+                }
+            }
+
+            Function<String, ClassFileHeader> headerResolver = getHeaderResolver(zipFile, candidateHeaders);
+            for (ClassFileHeader candidate : candidates) {
+                Class<?> serviceClass = getServiceClassIfMeet(candidate, headerResolver);
                 if (serviceClass != null) {
-                    classes.add(serviceClass);
+                    consumer.accept(serviceClass);
                 }
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return classes;
     }
 
-    private Class<?> getServiceClassIfMeet(JarEntry entry) {
-        if (isNameAndPackageMeet(entry)) {
-            Class<?> serviceClass = getClass(entry);
+    /**
+     * 按类名从Jar包中读取文件头（结果缓存，包括不存在的情况）
+     */
+    private Function<String, ClassFileHeader> getHeaderResolver(ZipFile zipFile,
+                                                                Map<String, ClassFileHeader> knownHeaders) {
+        Map<String, ClassFileHeader> headers = new HashMap<>(knownHeaders);
+        return className -> {
+            if (headers.containsKey(className)) {
+                return headers.get(className);
+            }
+
+            ZipEntry entry = zipFile.getEntry(className.replace('.', '/') + ".class");
+            ClassFileHeader header = null;
+            if (entry != null) {
+                try {
+                    header = readHeader(zipFile, entry);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            headers.put(className, header);
+            return header;
+        };
+    }
+
+    private ClassFileHeader readHeader(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            return ClassFileHeader.read(inputStream);
+        }
+    }
+
+    private Class<?> getServiceClassIfMeet(ClassFileHeader header, Function<String, ClassFileHeader> headerResolver) {
+        if (isPreAcceptable(header, headerResolver)) {
+            Class<?> serviceClass = getClass(header.getClassName());
             if (serviceClass.isInterface() && isAcceptable(serviceClass)) {
                 return serviceClass;
             }
@@ -67,19 +125,26 @@ public class JarFileScanner extends SelectableScanner {
         return null;
     }
 
-    private boolean isNameAndPackageMeet(JarEntry entry) {
-        if (!entry.getName().endsWith(".class") || entry.getName().contains("$")) {
+    /**
+     * 仅根据条目名称判断（包名、内部类、选择器的类名条件）
+     */
+    private boolean isNameAndPackageMeet(ZipEntry entry) {
+        String name = entry.getName();
+        if (!name.endsWith(".class") || name.contains("$")) {
+            return false;
+        }
+        if (scanPackage != null && !name.startsWith(scanPackage)) {
             return false;
         }
-        return scanPackage == null || entry.getName().startsWith(scanPackage);
+        return isNameAcceptable(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
     }
 
-    private Class<?> getClass(JarEntry entry) {
-        String className = entry.getName().replaceAll(".class$", "").replace("/", ".");
-        try {
-            return jcl == null ? Class.forName(className) : Class.forName(className, true, jcl);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    private Class<?> getClass(String className) {
+        return serviceClassLoader.loadClass(className);
+    }
+
+    @Override
+    public void close() {
+        serviceClassLoader.close();
     }
 }
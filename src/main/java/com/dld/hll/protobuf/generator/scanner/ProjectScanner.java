@@ -1,12 +1,20 @@
 package com.dld.hll.protobuf.generator.scanner;
 
 import com.dld.hll.protobuf.generator.util.StringUtils;
+import lombok.Setter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * 扫描项目或指定目录下所有的服务接口
@@ -25,10 +33,22 @@ public class ProjectScanner extends SelectableScanner {
      */
     private int projectJavaPathLength;
 
+    private String scanPackage;
+
+    @Setter
+    private ServiceClassLoader serviceClassLoader = ServiceClassLoader.ofDefault();
+
+    /**
+     * 是否并行扫描（按子目录拆分到 ForkJoinPool 中执行）
+     */
+    @Setter
+    private boolean parallel;
+
 
     public ProjectScanner(Path projectJavaPath, String scanPackage) {
         this.projectJavaPathLength = projectJavaPath.toFile().getAbsolutePath().length();
         this.scanPath = projectJavaPath;
+        this.scanPackage = scanPackage;
         if (StringUtils.hasText(scanPackage)) {
             this.scanPath = projectJavaPath.resolve(scanPackage);
         }
@@ -38,19 +58,29 @@ public class ProjectScanner extends SelectableScanner {
     }
 
     @Override
-    public List<Class<?>> scanServices() {
-        ArrayList<Class<?>> classes = new ArrayList<>();
-        scanRecursively(scanPath.toFile(), classes);
-        return classes;
+    public void scanServices(Consumer<Class<?>> consumer) {
+        scanWithIndex(scanPath, scanPackage, serviceClassLoader, this::doScanServices, consumer);
+    }
+
+    /**
+     * 串行扫描时边扫描边回调，并行扫描时全部完成后按顺序回调
+     */
+    private void doScanServices(Consumer<Class<?>> consumer) {
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new ScanTask(scanPath)).forEach(consumer);
+            return;
+        }
+
+        scanRecursively(scanPath.toFile(), consumer);
     }
 
     /**
-     * 递归的方式将全部满足条件的Class放入到指定集合中
+     * 递归的方式将全部满足条件的Class逐个回调
      *
      * @param scanPath 搜索目录
-     * @param classes  存放查询结果的集合
+     * @param consumer 接收查询结果的回调
      */
-    private void scanRecursively(File scanPath, List<Class<?>> classes) {
+    private void scanRecursively(File scanPath, Consumer<Class<?>> consumer) {
         File[] subFiles = getSubFiles(scanPath);
         if (subFiles == null) {
             return;
@@ -58,36 +88,112 @@ public class ProjectScanner extends SelectableScanner {
 
         for (File file : subFiles) {
             if (file.isDirectory()) {
-                scanRecursively(file, classes);
+                scanRecursively(file, consumer);
             } else {
                 Class<?> serviceClass = getServiceClassIfMeet(file);
                 if (serviceClass != null) {
-                    classes.add(serviceClass);
+                    consumer.accept(serviceClass);
                 }
             }
         }
     }
 
+    /**
+     * 按文件名排序，保证串行和并行扫描结果顺序一致
+     */
     private File[] getSubFiles(File scanPath) {
-        return scanPath.listFiles(pathname -> (pathname.isDirectory() ||
-                (pathname.getName().endsWith(".java") && !pathname.getName().equals("package-info.java"))));
+        File[] subFiles = scanPath.listFiles(pathname -> (pathname.isDirectory() || isJavaFile(pathname.getName())));
+        if (subFiles != null) {
+            Arrays.sort(subFiles, Comparator.comparing(File::getName));
+        }
+        return subFiles;
+    }
+
+    private boolean isJavaFile(String fileName) {
+        return fileName.endsWith(".java") && !fileName.equals("package-info.java");
     }
 
+    /**
+     * 先根据类名筛选，满足条件才加载类
+     */
     private Class<?> getServiceClassIfMeet(File file) {
-        Class<?> serviceClass = getClass(file);
+        String className = getClassName(file);
+        if (!isNameAcceptable(className)) {
+            return null;
+        }
+
+        Class<?> serviceClass = serviceClassLoader.loadClass(className);
         if (serviceClass.isInterface() && isAcceptable(serviceClass)) {
             return serviceClass;
         }
         return null;
     }
 
-    private Class<?> getClass(File file) {
-        String className = file.getAbsolutePath().substring(projectJavaPathLength + 1)
+    private String getClassName(File file) {
+        return file.getAbsolutePath().substring(projectJavaPathLength + 1)
                 .replaceAll(".java$", "").replace(File.separator, ".");
-        try {
-            return Class.forName(className);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    }
+
+    @Override
+    public void close() {
+        serviceClassLoader.close();
+    }
+
+    /**
+     * 并行扫描单个目录的任务
+     * 子目录拆分为子任务，当前目录下的文件在本任务中完成类加载和选择，结果按文件名顺序合并
+     */
+    private class ScanTask extends RecursiveTask<List<Class<?>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        ScanTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Class<?>> compute() {
+            List<Path> subPaths = listSubPaths();
+
+            // 先派发全部子目录任务，再处理当前目录下的文件
+            List<ScanTask> subTasks = new ArrayList<>();
+            for (Path subPath : subPaths) {
+                if (Files.isDirectory(subPath)) {
+                    ScanTask subTask = new ScanTask(subPath);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                }
+            }
+
+            List<Class<?>> classes = new ArrayList<>();
+            int taskIndex = 0;
+            for (Path subPath : subPaths) {
+                if (Files.isDirectory(subPath)) {
+                    classes.addAll(subTasks.get(taskIndex++).join());
+                } else {
+                    Class<?> serviceClass = getServiceClassIfMeet(subPath.toFile());
+                    if (serviceClass != null) {
+                        classes.add(serviceClass);
+                    }
+                }
+            }
+            return classes;
+        }
+
+        private List<Path> listSubPaths() {
+            List<Path> subPaths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                    path -> Files.isDirectory(path) || isJavaFile(path.getFileName().toString()))) {
+                for (Path path : stream) {
+                    subPaths.add(path);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            subPaths.sort(Comparator.comparing(path -> path.getFileName().toString()));
+            return subPaths;
         }
     }
 }
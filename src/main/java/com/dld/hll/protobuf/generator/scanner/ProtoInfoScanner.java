@@ -1,13 +1,29 @@
 package com.dld.hll.protobuf.generator.scanner;
 
+import java.io.Closeable;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 扫描器
  *
  * @author Chen Hui
  */
-public interface ProtoInfoScanner {
+public interface ProtoInfoScanner extends Closeable {
 
     List<Class<?>> scanServices();
+
+    /**
+     * 按扫描顺序逐个回调服务接口，支持的扫描器在扫描过程中即回调（不等待全部扫描完成）
+     */
+    default void scanServices(Consumer<Class<?>> consumer) {
+        scanServices().forEach(consumer);
+    }
+
+    /**
+     * 运行结束后释放扫描时占用的资源（如类加载器）
+     */
+    @Override
+    default void close() {
+    }
 }
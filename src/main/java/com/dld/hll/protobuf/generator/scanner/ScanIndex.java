@@ -0,0 +1,225 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import com.dld.hll.protobuf.generator.util.DigestUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 持久化的扫描索引
+ * 按Jar包或目录记录满足条件的服务接口，以及扫描时的选择器配置和路径指纹（大小、修改时间、内容摘要）；
+ * 指纹和配置均未变化时直接使用索引中的结果，不需要重新扫描
+ *
+ * @author Chen Hui
+ */
+public class ScanIndex {
+
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+    private static final String CONFIGURATION_SUFFIX = ".configuration";
+    private static final String SERVICES_SUFFIX = ".services";
+
+    private final Path indexFile;
+    private final Properties properties = new Properties();
+    private boolean isChanged;
+
+
+    private ScanIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 加载索引文件，文件不存在时为空索引
+     */
+    public static ScanIndex load(Path indexFile) {
+        ScanIndex scanIndex = new ScanIndex(indexFile);
+        if (Files.exists(indexFile)) {
+            try (InputStream inputStream = Files.newInputStream(indexFile)) {
+                scanIndex.properties.load(inputStream);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return scanIndex;
+    }
+
+    /**
+     * 查找指定路径的扫描结果，路径指纹或配置变化时结果为 null，同时返回扫描前计算的完整指纹，
+     * 重新扫描后与结果一起记录：扫描期间路径被修改时，记录的是修改前的指纹，下次运行会重新扫描
+     * 摘要在锁外计算，并行扫描的多个路径互不等待
+     */
+    Lookup lookup(Path root, String configuration) {
+        String key = getKey(root);
+        String services;
+        String storedConfiguration;
+        Fingerprint stored;
+        synchronized (this) {
+            services = properties.getProperty(key + SERVICES_SUFFIX);
+            storedConfiguration = properties.getProperty(key + CONFIGURATION_SUFFIX);
+            stored = Fingerprint.parse(properties.getProperty(key + FINGERPRINT_SUFFIX));
+        }
+
+        // Jar包大小和修改时间均未变化时不再计算摘要；
+        // 目录中的文件可能在修改时间精度内被重写为相同大小（快速重新编译、保留时间的复制），始终比较内容摘要
+        boolean isDirectory = Files.isDirectory(root);
+        Fingerprint current = isDirectory ? Fingerprint.full(root) : Fingerprint.metadata(root);
+        if (services == null || !configuration.equals(storedConfiguration) || stored == null) {
+            return new Lookup(null, current.hash != null ? current : Fingerprint.full(root));
+        }
+        if (isDirectory || current.size != stored.size || current.lastModified != stored.lastModified) {
+            if (current.hash == null) {
+                current = Fingerprint.full(root);
+            }
+            if (!current.hash.equals(stored.hash)) {
+                return new Lookup(null, current);
+            }
+            if (current.size != stored.size || current.lastModified != stored.lastModified) {
+                // 内容未变化（如重新打包），更新指纹
+                synchronized (this) {
+                    properties.setProperty(key + FINGERPRINT_SUFFIX, current.toString());
+                    isChanged = true;
+                }
+            }
+        }
+        return new Lookup(services.isEmpty() ? Collections.emptyList() : Arrays.asList(services.split(",")),
+                current);
+    }
+
+    /**
+     * 记录指定路径的扫描结果
+     *
+     * @param fingerprint 扫描前计算的指纹（{@link Lookup#getFingerprint()}）
+     */
+    synchronized void put(Path root, String configuration, Fingerprint fingerprint, List<Class<?>> serviceClasses) {
+        String key = getKey(root);
+        properties.setProperty(key + FINGERPRINT_SUFFIX, fingerprint.toString());
+        properties.setProperty(key + CONFIGURATION_SUFFIX, configuration);
+        properties.setProperty(key + SERVICES_SUFFIX,
+                serviceClasses.stream().map(Class::getName).collect(Collectors.joining(",")));
+        isChanged = true;
+    }
+
+    /**
+     * 有变化时写入索引文件（先写临时文件再替换）
+     */
+    public synchronized void save() {
+        if (!isChanged) {
+            return;
+        }
+
+        try {
+            Path parent = indexFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                properties.store(outputStream, "protobuf-generator scan index");
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            isChanged = false;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String getKey(Path root) {
+        return root.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * 查找结果：索引中的服务接口类名（没有可用结果时为 null），及当前的完整指纹
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class Lookup {
+
+        private final List<String> serviceClassNames;
+        private final Fingerprint fingerprint;
+    }
+
+    /**
+     * 路径指纹
+     * Jar包为文件大小、修改时间和内容摘要；
+     * 目录为全部文件的大小之和、最大修改时间，以及全部文件（相对路径、大小、内容）的摘要
+     */
+    @AllArgsConstructor
+    static final class Fingerprint {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        /**
+         * 只获取大小和修改时间，不计算摘要
+         */
+        static Fingerprint metadata(Path root) {
+            return of(root, false);
+        }
+
+        static Fingerprint full(Path root) {
+            return of(root, true);
+        }
+
+        private static Fingerprint of(Path root, boolean isNeedHash) {
+            try {
+                if (!Files.isDirectory(root)) {
+                    return new Fingerprint(Files.size(root), Files.getLastModifiedTime(root).toMillis(),
+                            isNeedHash ? DigestUtils.sha256Hex(root) : null);
+                }
+
+                List<Path> files;
+                try (Stream<Path> paths = Files.walk(root)) {
+                    files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+
+                // 文件数量计入大小，删除空文件也能被发现
+                long size = files.size();
+                long lastModified = 0;
+                MessageDigest messageDigest = isNeedHash ? DigestUtils.newSha256() : null;
+                for (Path file : files) {
+                    long fileSize = Files.size(file);
+                    long fileLastModified = Files.getLastModifiedTime(file).toMillis();
+                    size += fileSize;
+                    lastModified = Math.max(lastModified, fileLastModified);
+                    if (messageDigest != null) {
+                        String line = root.relativize(file) + ":" + fileSize + "\n";
+                        messageDigest.update(line.getBytes(StandardCharsets.UTF_8));
+                        DigestUtils.update(messageDigest, file);
+                    }
+                }
+                return new Fingerprint(size, lastModified,
+                        messageDigest != null ? DigestUtils.toHex(messageDigest.digest()) : null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        static Fingerprint parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split(":");
+            if (parts.length != 3) {
+                return null;
+            }
+            return new Fingerprint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        }
+
+        @Override
+        public String toString() {
+            return size + ":" + lastModified + ":" + hash;
+        }
+    }
+}
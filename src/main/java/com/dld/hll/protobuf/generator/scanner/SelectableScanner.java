@@ -2,9 +2,13 @@ package com.dld.hll.protobuf.generator.scanner;
 
 import com.dld.hll.protobuf.generator.selector.ServiceSelector;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author Chen Hui
@@ -14,12 +18,25 @@ public abstract class SelectableScanner implements ProtoInfoScanner {
 
     private List<ServiceSelector> selectors;
 
+    /**
+     * 扫描索引，为 null 时每次都重新扫描
+     */
+    @Setter
+    private ScanIndex scanIndex;
 
+
+    /**
+     * 按开销顺序插入（开销相同时保持添加顺序），包名、类名等简单条件先于接口继承关系判断
+     */
     public void addSelector(ServiceSelector selector) {
         if (selectors == null) {
             selectors = new ArrayList<>();
         }
-        selectors.add(selector);
+        int index = selectors.size();
+        while (index > 0 && selectors.get(index - 1).getCost() > selector.getCost()) {
+            index--;
+        }
+        selectors.add(index, selector);
     }
 
     boolean isAcceptable(Class<?> clazz) {
@@ -34,4 +51,77 @@ public abstract class SelectableScanner implements ProtoInfoScanner {
         }
         return true;
     }
+
+    /**
+     * 读取类文件之前仅根据类全名筛选
+     */
+    boolean isNameAcceptable(String className) {
+        if (selectors == null) {
+            return true;
+        }
+
+        for (ServiceSelector selector : selectors) {
+            if (!selector.acceptName(className)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 加载类之前根据类文件头预先筛选，只有接口且全部选择器预筛选通过才需要加载
+     */
+    boolean isPreAcceptable(ClassFileHeader header, Function<String, ClassFileHeader> headerResolver) {
+        if (!header.isInterface()) {
+            return false;
+        }
+        if (selectors == null) {
+            return true;
+        }
+
+        for (ServiceSelector selector : selectors) {
+            if (!selector.preAccept(header, headerResolver)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Class<?>> scanServices() {
+        List<Class<?>> serviceClasses = new ArrayList<>();
+        scanServices(serviceClasses::add);
+        return serviceClasses;
+    }
+
+    /**
+     * 优先使用扫描索引中的结果，路径指纹或配置变化时重新扫描并更新索引
+     *
+     * @param root     扫描的Jar包或目录
+     * @param scanner  实际的扫描过程，扫描到的服务接口逐个回调
+     * @param consumer 接收服务接口的回调
+     */
+    void scanWithIndex(Path root, String scanPackage, ServiceClassLoader serviceClassLoader,
+                       Consumer<Consumer<Class<?>>> scanner, Consumer<Class<?>> consumer) {
+        if (scanIndex == null) {
+            scanner.accept(consumer);
+            return;
+        }
+
+        String configuration = getClass().getSimpleName() + "|" + scanPackage + "|" + selectors;
+        ScanIndex.Lookup lookup = scanIndex.lookup(root, configuration);
+        if (lookup.getServiceClassNames() != null) {
+            lookup.getServiceClassNames().forEach(className ->
+                    consumer.accept(serviceClassLoader.loadClass(className)));
+            return;
+        }
+
+        // 记录扫描前的指纹，扫描期间路径变化时下次重新扫描
+        List<Class<?>> serviceClasses = new ArrayList<>();
+        scanner.accept(serviceClass -> {
+            serviceClasses.add(serviceClass);
+            consumer.accept(serviceClass);
+        });
+        scanIndex.put(root, configuration, lookup.getFingerprint(), serviceClasses);
+    }
 }
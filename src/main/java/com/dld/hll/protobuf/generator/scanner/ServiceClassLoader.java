@@ -0,0 +1,138 @@
+package com.dld.hll.protobuf.generator.scanner;
+
+import com.dld.hll.protobuf.generator.util.DigestUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 扫描器使用的类加载层
+ * 加载类时不执行静态初始化；Jar包和类目录使用隔离的类加载器，运行结束后关闭，
+ * 或按Jar包内容摘要缓存，在同一JVM的多次运行间复用
+ *
+ * @author Chen Hui
+ */
+public class ServiceClassLoader implements Closeable {
+
+    /**
+     * 可复用的类加载器（Jar包内容摘要 + 共享类 -> 类加载器）
+     */
+    private static final Map<String, URLClassLoader> WARM_LOADERS = new ConcurrentHashMap<>();
+
+    private final ClassLoader classLoader;
+
+    /**
+     * 运行结束时是否需要关闭
+     */
+    private final boolean isNeedClose;
+
+
+    private ServiceClassLoader(ClassLoader classLoader, boolean isNeedClose) {
+        this.classLoader = classLoader;
+        this.isNeedClose = isNeedClose;
+    }
+
+    /**
+     * 使用生成器自身的类加载器（项目扫描，或外部已完成Jar包加载）
+     */
+    public static ServiceClassLoader ofDefault() {
+        return new ServiceClassLoader(ServiceClassLoader.class.getClassLoader(), false);
+    }
+
+    /**
+     * 为指定Jar包创建隔离的类加载器
+     *
+     * @param isReuse          是否复用同一内容Jar包的类加载器
+     * @param sharedClassNames 需要与调用方共享的类（由父加载器加载）
+     */
+    public static ServiceClassLoader ofJar(String jarFile, boolean isReuse, Collection<String> sharedClassNames) {
+        return ofClasspath(Collections.singletonList(jarFile), isReuse, sharedClassNames);
+    }
+
+    /**
+     * 为多个Jar包或类目录创建同一个隔离的类加载器（各路径之间的类可以互相引用）
+     * 只有全部路径都是Jar包时才能复用，类目录的内容随时可能变化
+     *
+     * @param isReuse          是否复用同一内容Jar包的类加载器
+     * @param sharedClassNames 需要与调用方共享的类（由父加载器加载）
+     */
+    public static ServiceClassLoader ofClasspath(List<String> classpath, boolean isReuse,
+                                                 Collection<String> sharedClassNames) {
+        Set<String> shared = new TreeSet<>(sharedClassNames);
+        if (!isReuse || classpath.stream().anyMatch(path -> Files.isDirectory(Paths.get(path)))) {
+            return new ServiceClassLoader(newClassLoader(classpath, shared), true);
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (String jarFile : classpath) {
+            key.append(DigestUtils.sha256Hex(Paths.get(jarFile))).append(',');
+        }
+        key.append(shared);
+        return new ServiceClassLoader(
+                WARM_LOADERS.computeIfAbsent(key.toString(), k -> newClassLoader(classpath, shared)), false);
+    }
+
+    /**
+     * 关闭并清除全部复用的类加载器
+     */
+    public static void clearWarmLoaders() {
+        for (String key : WARM_LOADERS.keySet()) {
+            URLClassLoader loader = WARM_LOADERS.remove(key);
+            if (loader != null) {
+                closeQuietly(loader);
+            }
+        }
+    }
+
+    /**
+     * 加载类（不执行静态初始化）
+     */
+    public Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (isNeedClose) {
+            closeQuietly((URLClassLoader) classLoader);
+        }
+    }
+
+    private static URLClassLoader newClassLoader(List<String> classpath, Set<String> sharedClassNames) {
+        URL[] urls = new URL[classpath.size()];
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = new File(classpath.get(i)).toURI().toURL();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new ChildFirstClassLoader(urls, ServiceClassLoader.class.getClassLoader(), sharedClassNames);
+    }
+
+    /**
+     * 关闭失败只会导致Jar包文件句柄延迟释放，不影响生成结果，忽略异常
+     */
+    private static void closeQuietly(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
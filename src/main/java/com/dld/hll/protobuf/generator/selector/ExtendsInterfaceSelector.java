@@ -1,32 +1,67 @@
 package com.dld.hll.protobuf.generator.selector;
 
-import lombok.AllArgsConstructor;
+import com.dld.hll.protobuf.generator.scanner.ClassFileHeader;
+import lombok.ToString;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
+ * 选择继承了任一指定接口的接口
+ *
  * @author Chen Hui
  */
-@AllArgsConstructor
+@ToString(of = "extendsInterfaces")
 public class ExtendsInterfaceSelector implements ServiceSelector {
 
-    private Class<?> extendsInterface;
+    private List<Class<?>> extendsInterfaces;
+    private List<String> extendsInterfaceNames;
+    private InterfaceHierarchyIndex hierarchyIndex;
+
 
+    public ExtendsInterfaceSelector(Class<?>... extendsInterfaces) {
+        this(new InterfaceHierarchyIndex(), extendsInterfaces);
+    }
+
+    public ExtendsInterfaceSelector(InterfaceHierarchyIndex hierarchyIndex, Class<?>... extendsInterfaces) {
+        this.hierarchyIndex = hierarchyIndex;
+        this.extendsInterfaces = Arrays.asList(extendsInterfaces);
+        this.extendsInterfaceNames = this.extendsInterfaces.stream().map(Class::getName).collect(Collectors.toList());
+    }
 
     @Override
     public boolean accept(Class<?> serviceInterface) {
-        Class<?>[] interfaces = serviceInterface.getInterfaces();
-        if (interfaces.length != 0) {
-            for (Class<?> inf : interfaces) {
-                if (inf == extendsInterface) {
-                    return true;
-                }
+        Set<Class<?>> superInterfaces = hierarchyIndex.getSuperInterfaces(serviceInterface);
+        for (Class<?> extendsInterface : extendsInterfaces) {
+            if (superInterfaces.contains(extendsInterface)) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            for (Class<?> inf : interfaces) {
-                if (accept(inf)) {
-                    return true;
-                }
+    /**
+     * 存在无法获取文件头的父接口时（如在其他Jar包中）无法判断，视为满足
+     */
+    @Override
+    public boolean preAccept(ClassFileHeader header, Function<String, ClassFileHeader> headerResolver) {
+        Set<String> superInterfaceNames = hierarchyIndex.getSuperInterfaceNames(header, headerResolver);
+        if (superInterfaceNames == null) {
+            return true;
+        }
+        for (String extendsInterfaceName : extendsInterfaceNames) {
+            if (superInterfaceNames.contains(extendsInterfaceName)) {
+                return true;
             }
         }
         return false;
     }
+
+    @Override
+    public int getCost() {
+        return HIERARCHY_COST;
+    }
 }
@@ -0,0 +1,111 @@
+package com.dld.hll.protobuf.generator.selector;
+
+import com.dld.hll.protobuf.generator.scanner.ClassFileHeader;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 接口继承关系索引（每次运行一个）
+ * 每个接口的全部父接口（传递闭包）只计算一次，共享的祖先接口不会被重复遍历
+ *
+ * @author Chen Hui
+ */
+public class InterfaceHierarchyIndex {
+
+    /**
+     * 无法确定全部父接口（存在无法读取文件头的父接口）
+     */
+    private static final Set<String> UNKNOWN = Collections.emptySet();
+
+    private final ClassValue<Set<Class<?>>> superInterfaces = new ClassValue<Set<Class<?>>>() {
+        @Override
+        protected Set<Class<?>> computeValue(Class<?> type) {
+            Set<Class<?>> result = new HashSet<>();
+            for (Class<?> inf : type.getInterfaces()) {
+                result.add(inf);
+                result.addAll(get(inf));
+            }
+            return Collections.unmodifiableSet(result);
+        }
+    };
+
+    /**
+     * 类全名 -> 全部父接口全名（根据类文件头计算）
+     */
+    private final Map<String, Set<String>> superInterfaceNames = new ConcurrentHashMap<>();
+
+
+    /**
+     * 全部父接口（传递闭包）
+     */
+    public Set<Class<?>> getSuperInterfaces(Class<?> type) {
+        return superInterfaces.get(type);
+    }
+
+    /**
+     * 根据类文件头获取全部父接口全名
+     * JDK 中的接口不可能继承非 JDK 接口，其父接口通过启动类加载器反射获取（不执行静态初始化）
+     *
+     * @return 存在无法读取文件头的父接口时返回 null
+     */
+    public Set<String> getSuperInterfaceNames(ClassFileHeader header,
+                                              Function<String, ClassFileHeader> headerResolver) {
+        Set<String> names = superInterfaceNames.get(header.getClassName());
+        if (names == null) {
+            names = computeSuperInterfaceNames(header, headerResolver);
+            Set<String> previous = superInterfaceNames.putIfAbsent(header.getClassName(), names);
+            if (previous != null) {
+                names = previous;
+            }
+        }
+        return names == UNKNOWN ? null : names;
+    }
+
+    private Set<String> computeSuperInterfaceNames(ClassFileHeader header,
+                                                   Function<String, ClassFileHeader> headerResolver) {
+        Set<String> result = new HashSet<>();
+        for (String interfaceName : header.getInterfaceNames()) {
+            result.add(interfaceName);
+            if (interfaceName.startsWith("java.")) {
+                Set<String> names = getJdkSuperInterfaceNames(interfaceName);
+                if (names == null) {
+                    return UNKNOWN;
+                }
+                result.addAll(names);
+                continue;
+            }
+
+            ClassFileHeader interfaceHeader = headerResolver.apply(interfaceName);
+            Set<String> names = interfaceHeader == null ? null :
+                    getSuperInterfaceNames(interfaceHeader, headerResolver);
+            if (names == null) {
+                return UNKNOWN;
+            }
+            result.addAll(names);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return 无法加载时返回 null
+     */
+    private Set<String> getJdkSuperInterfaceNames(String interfaceName) {
+        Class<?> jdkInterface;
+        try {
+            jdkInterface = Class.forName(interfaceName, false, null);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (Class<?> superInterface : getSuperInterfaces(jdkInterface)) {
+            names.add(superInterface.getName());
+        }
+        return names;
+    }
+}
@@ -1,20 +1,53 @@
 package com.dld.hll.protobuf.generator.selector;
 
-import lombok.AllArgsConstructor;
+import lombok.ToString;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
+ * 按类名（SimpleName）选择
+ * 多个包含模式和排除模式预先编译为同一个正则表达式：满足任一包含模式（没有包含模式时全部满足），且不满足任何排除模式
+ *
  * @author Chen Hui
  */
-@AllArgsConstructor
+@ToString
 public class NamePatternSelector implements ServiceSelector {
 
-    private String pattern;
+    private Pattern pattern;
 
 
+    public NamePatternSelector(String pattern) {
+        this(Collections.singletonList(pattern), Collections.emptyList());
+    }
+
+    public NamePatternSelector(List<String> includePatterns, List<String> excludePatterns) {
+        StringBuilder regex = new StringBuilder();
+        if (!excludePatterns.isEmpty()) {
+            regex.append("(?!").append(alternation(excludePatterns)).append("$)");
+        }
+        regex.append(includePatterns.isEmpty() ? "(?s:.*)" : alternation(includePatterns));
+        this.pattern = Pattern.compile(regex.toString());
+    }
+
+    private static String alternation(List<String> patterns) {
+        return patterns.stream().map(p -> "(?:" + p + ")").collect(Collectors.joining("|", "(?:", ")"));
+    }
+
     @Override
     public boolean accept(Class<?> serviceInterface) {
-        return Pattern.matches(pattern, serviceInterface.getSimpleName());
+        return pattern.matcher(serviceInterface.getSimpleName()).matches();
+    }
+
+    @Override
+    public boolean acceptName(String className) {
+        return pattern.matcher(className.substring(className.lastIndexOf('.') + 1)).matches();
+    }
+
+    @Override
+    public int getCost() {
+        return NAME_COST;
     }
 }
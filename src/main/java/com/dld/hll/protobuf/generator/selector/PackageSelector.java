@@ -0,0 +1,84 @@
+package com.dld.hll.protobuf.generator.selector;
+
+import lombok.ToString;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 按包名选择
+ * 包含和排除的包名保存在按包名分段的前缀树中，以最长匹配的包名为准（如包含 com.a，排除 com.a.internal）；
+ * 没有任何包含的包名时，未匹配的类全部满足
+ *
+ * @author Chen Hui
+ */
+@ToString(of = {"includePackages", "excludePackages"})
+public class PackageSelector implements ServiceSelector {
+
+    private TreeSet<String> includePackages;
+    private TreeSet<String> excludePackages;
+    private Node root = new Node();
+
+
+    public PackageSelector(List<String> includePackages, List<String> excludePackages) {
+        this.includePackages = new TreeSet<>(includePackages);
+        this.excludePackages = new TreeSet<>(excludePackages);
+        for (String includePackage : includePackages) {
+            root.put(includePackage, Boolean.TRUE);
+        }
+        for (String excludePackage : excludePackages) {
+            root.put(excludePackage, Boolean.FALSE);
+        }
+        root.include = includePackages.isEmpty();
+    }
+
+    @Override
+    public boolean accept(Class<?> serviceInterface) {
+        return acceptName(serviceInterface.getName());
+    }
+
+    @Override
+    public boolean acceptName(String className) {
+        Node node = root;
+        boolean include = root.include;
+        int start = 0;
+        int end;
+        // 只匹配包名部分，类名本身不参与
+        while ((end = className.indexOf('.', start)) != -1) {
+            node = node.children.get(className.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.include != null) {
+                include = node.include;
+            }
+            start = end + 1;
+        }
+        return include;
+    }
+
+    @Override
+    public int getCost() {
+        return PACKAGE_COST;
+    }
+
+    private static class Node {
+
+        private Map<String, Node> children = new HashMap<>();
+
+        /**
+         * 包含或排除，为 null 时表示该节点不是配置的包名
+         */
+        private Boolean include;
+
+        void put(String packageName, Boolean include) {
+            Node node = this;
+            for (String segment : packageName.split("[./]")) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            node.include = include;
+        }
+    }
+}
@@ -1,9 +1,42 @@
 package com.dld.hll.protobuf.generator.selector;
 
+import com.dld.hll.protobuf.generator.scanner.ClassFileHeader;
+
+import java.util.function.Function;
+
 /**
  * @author Chen Hui
  */
 public interface ServiceSelector {
 
+    /**
+     * 选择器相对开销，扫描器按开销从小到大执行选择器
+     */
+    int PACKAGE_COST = 10;
+    int NAME_COST = 20;
+    int HIERARCHY_COST = 100;
+
     boolean accept(Class<?> serviceInterface);
+
+    default int getCost() {
+        return NAME_COST;
+    }
+
+    /**
+     * 读取类文件之前，仅根据类全名预先筛选
+     * 无法判断时必须返回 true
+     */
+    default boolean acceptName(String className) {
+        return true;
+    }
+
+    /**
+     * 加载类之前，根据类文件头预先筛选
+     * 无法判断时必须返回 true，最终仍由 {@link #accept(Class)} 确认
+     *
+     * @param headerResolver 根据类全名获取其他类的文件头，不存在时返回 null
+     */
+    default boolean preAccept(ClassFileHeader header, Function<String, ClassFileHeader> headerResolver) {
+        return true;
+    }
 }
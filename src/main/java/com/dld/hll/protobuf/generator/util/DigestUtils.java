@@ -0,0 +1,54 @@
+package com.dld.hll.protobuf.generator.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @author Chen Hui
+ */
+public abstract class DigestUtils {
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 文件内容的 SHA-256 摘要（十六进制）
+     */
+    public static String sha256Hex(Path file) {
+        MessageDigest messageDigest = newSha256();
+        update(messageDigest, file);
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * 将文件内容追加到摘要中
+     */
+    public static void update(MessageDigest messageDigest, Path file) {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.annotation.Comment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 多个执行器同时增量生成到同一目录（同时生成同一个描述符集合文件），结果与串行生成逐字节比较，且目录中不能残留临时文件
+ * 在项目根目录下运行
+ *
+ * @author Chen Hui
+ */
+public class TestConcurrentExecutor {
+
+    private static final int EXECUTORS = 8;
+    private static final int ROUNDS = 5;
+    private static final String DESCRIPTOR_SET_FILE = "descriptor.pb";
+
+    public static void main(String[] args) throws Exception {
+        Path serialPath = Paths.get("target/concurrent-test/serial");
+        Path concurrentPath = Paths.get("target/concurrent-test/concurrent");
+        deleteDirectory(serialPath);
+        newExecutor(serialPath).executor();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(EXECUTORS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                deleteDirectory(concurrentPath);
+                CyclicBarrier barrier = new CyclicBarrier(EXECUTORS);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < EXECUTORS; i++) {
+                    futures.add(executorService.submit(() -> {
+                        barrier.await();
+                        newExecutor(concurrentPath).executor();
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                compare(serialPath, concurrentPath);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        System.out.println("OK: " + EXECUTORS + " executors x " + ROUNDS + " rounds match the serial output");
+    }
+
+    private static ProtoExecutor newExecutor(Path generatePath) {
+        return ProtoExecutor.newBuilder()
+                .setProjectName("protobuf-generator")
+                .setProjectPath(System.getProperty("user.dir"))
+                .setProjectBasePath("src/test/java")
+                .setGeneratePath(generatePath.toString())
+                .setComment(Comment.class, "value")
+                .setOrdering(ProtoOrdering.DECLARATION)
+                .setIncrementalOutput(true)
+                .setDescriptorSetFile(generatePath.resolve(DESCRIPTOR_SET_FILE).toString())
+                .build();
+    }
+
+    private static void compare(Path expectedPath, Path actualPath) throws IOException {
+        String[] expected = listProtoFiles(expectedPath);
+        String[] actual = listProtoFiles(actualPath);
+        if (!Arrays.equals(expected, actual)) {
+            throw new RuntimeException("Files differ: " + Arrays.toString(expected) + " vs " + Arrays.toString(actual));
+        }
+        List<String> fileNames = new ArrayList<>(Arrays.asList(expected));
+        fileNames.add(DESCRIPTOR_SET_FILE);
+        for (String fileName : fileNames) {
+            if (!Arrays.equals(Files.readAllBytes(expectedPath.resolve(fileName)),
+                    Files.readAllBytes(actualPath.resolve(fileName)))) {
+                throw new RuntimeException("Content of [" + fileName + "] differs from the serial output");
+            }
+        }
+
+        String[] tempFiles = actualPath.toFile().list((dir, name) -> name.endsWith(".tmp"));
+        if (tempFiles != null && tempFiles.length > 0) {
+            throw new RuntimeException("Temp files left: " + Arrays.toString(tempFiles));
+        }
+    }
+
+    private static String[] listProtoFiles(Path path) {
+        String[] fileNames = path.toFile().list((dir, name) -> name.endsWith(".proto"));
+        if (fileNames == null) {
+            throw new RuntimeException("No output in " + path);
+        }
+        Arrays.sort(fileNames);
+        return fileNames;
+    }
+
+    private static void deleteDirectory(Path path) {
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new RuntimeException("File could not be deleted -> " + file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.entity.ProtoService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 深层类型图的压力测试：生成 10k 层的继承链及字段引用链，以及多层嵌套的 Map、List 泛型字段，
+ * 在栈很小的线程中依次解析（ProtoInfoParser）、计算引用（ProtoCitationAnalyzer）、生成proto文件及描述符集合，
+ * 不能出现 StackOverflowError
+ * 参数：链的层数（默认 10000）、泛型嵌套层数（默认 100），在项目根目录下运行
+ *
+ * @author Chen Hui
+ */
+public class TestDeepChain {
+
+    private static final String PACKAGE_NAME = "deep";
+    private static final String PACKAGE_PATH = PACKAGE_NAME + "/";
+    private static final String COMMON_PROTO_FILE_NAME = "DeepChainCommon";
+
+    /**
+     * 运行生成器的线程栈大小，远小于递归处理 10k 层所需
+     */
+    private static final long GENERATOR_STACK_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int genericDepth = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Path testPath = Paths.get("target/deep-chain-test");
+        Path classesPath = testPath.resolve("classes");
+
+        deleteDirectory(classesPath.resolve(PACKAGE_NAME));
+        writeFixture(classesPath.resolve(PACKAGE_NAME), depth, genericDepth);
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classesPath.toUri().toURL()},
+                TestDeepChain.class.getClassLoader())) {
+            // JVM 加载及链接类时递归处理父类（与生成器无关），先由顶层到底层加载并链接（反射触发）继承链，每次只处理一层
+            for (int i = depth - 1; i >= 0; i--) {
+                Class.forName(PACKAGE_NAME + ".Base" + i, false, classLoader).getDeclaredFields();
+            }
+            Class<?> serviceClass = classLoader.loadClass(PACKAGE_NAME + ".DeepService");
+            for (ProtoOrdering ordering : ProtoOrdering.values()) {
+                Path generatePath = testPath.resolve("proto-" + ordering.name().toLowerCase());
+                deleteDirectory(generatePath);
+                long generateStart = System.currentTimeMillis();
+                runInThread(GENERATOR_STACK_SIZE, () -> generate(serviceClass, ordering, generatePath));
+                check(generatePath, depth);
+                System.out.println("OK: " + ordering + " generated in " +
+                        (System.currentTimeMillis() - generateStart) + " ms");
+            }
+        }
+    }
+
+    /**
+     * DeepService 的方法参数为继承链的最底层（Base0 继承 Base1 ... 只有最顶层有字段），
+     * 返回值为字段引用链的第一层（Link0 引用 Link1 ...，Link0 同时有嵌套泛型字段）
+     * javac 无法在合理的内存内编译上万层的继承链，直接写类文件
+     */
+    private static void writeFixture(Path packagePath, int depth, int genericDepth) throws IOException {
+        Files.createDirectories(packagePath);
+        for (int i = 0; i < depth; i++) {
+            boolean isLast = i == depth - 1;
+            ClassFile base = new ClassFile(PACKAGE_PATH + "Base" + i,
+                    isLast ? "java/lang/Object" : PACKAGE_PATH + "Base" + (i + 1), false);
+            if (isLast) {
+                base.addField("value", "Ljava/lang/Integer;", null);
+            }
+            base.write(packagePath);
+
+            ClassFile link = new ClassFile(PACKAGE_PATH + "Link" + i, "java/lang/Object", false);
+            if (!isLast) {
+                link.addField("next", "L" + PACKAGE_PATH + "Link" + (i + 1) + ";", null);
+            }
+            link.addField("name", "Ljava/lang/String;", null);
+            if (i == 0) {
+                String signature = buildNestedGeneric(genericDepth);
+                link.addField("nested", signature.substring(0, signature.indexOf('<')) + ";", signature);
+            }
+            link.write(packagePath);
+        }
+
+        ClassFile service = new ClassFile(PACKAGE_PATH + "DeepService", "java/lang/Object", true);
+        service.addMethod("query", "(L" + PACKAGE_PATH + "Base0;)L" + PACKAGE_PATH + "Link0;");
+        service.write(packagePath);
+    }
+
+    /**
+     * Map&lt;String, List&lt;Map&lt;String, ... List&lt;Link1&gt;&gt;&gt;&gt; 的签名，Map 与 List 交替
+     */
+    private static String buildNestedGeneric(int genericDepth) {
+        String signature = "Ljava/util/List<L" + PACKAGE_PATH + "Link1;>;";
+        for (int i = 1; i < genericDepth; i++) {
+            signature = i % 2 == 1 ? "Ljava/util/Map<Ljava/lang/String;" + signature + ">;" :
+                    "Ljava/util/List<" + signature + ">;";
+        }
+        return signature;
+    }
+
+    private static void generate(Class<?> serviceClass, ProtoOrdering ordering, Path generatePath) {
+        ProtoContext context = new ProtoContext();
+        context.setOrdering(ordering);
+        ProtoInfoRegistry registry = new ProtoInfoRegistry();
+        ProtoInfoReader reader = new ProtoInfoReader();
+        reader.setRegistry(registry);
+        reader.setContext(context);
+        reader.setServiceHandler(services -> {
+            ProtoService service = services.get(0);
+            if (service.getProtoMethods().size() != 1) {
+                throw new RuntimeException("Expected one method in " + service.getServiceClass());
+            }
+        });
+        reader.load(Collections.singletonList(serviceClass));
+
+        ProtoTypeTable typeTable = registry.getTypeTable();
+        new ProtoFileGenerator(typeTable, generatePath.toFile(), COMMON_PROTO_FILE_NAME).generate();
+        ProtoDescriptorGenerator descriptorGenerator = new ProtoDescriptorGenerator(typeTable, COMMON_PROTO_FILE_NAME);
+        descriptorGenerator.generate(generatePath.resolve("descriptor.pb"));
+    }
+
+    /**
+     * 每层的 Base、Link 都生成消息
+     */
+    private static void check(Path generatePath, int depth) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (String fileName : new String[]{COMMON_PROTO_FILE_NAME + ".proto", "DeepService.proto"}) {
+            content.append(new String(Files.readAllBytes(generatePath.resolve(fileName)), StandardCharsets.UTF_8));
+        }
+        for (String prefix : new String[]{"Base", "Link"}) {
+            for (int i : new int[]{0, depth / 2, depth - 1}) {
+                if (content.indexOf("message " + prefix + i + " {") < 0) {
+                    throw new RuntimeException("Message [" + prefix + i + "] is not generated");
+                }
+            }
+        }
+        if (!Files.exists(generatePath.resolve("descriptor.pb"))) {
+            throw new RuntimeException("Descriptor set is not generated");
+        }
+    }
+
+    /**
+     * 在指定栈大小的线程中运行，异常（包括 StackOverflowError）在当前线程抛出
+     */
+    private static void runInThread(long stackSize, Runnable task) throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "deep-chain", stackSize);
+        thread.start();
+        thread.join();
+        if (failure.get() instanceof Exception) {
+            throw (Exception) failure.get();
+        } else if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+    }
+
+    private static void deleteDirectory(Path path) {
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new RuntimeException("File could not be deleted -> " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 最小的类文件（Java 8）：只有字段（可带泛型签名）及抽象方法，没有构造方法，只用于反射
+     */
+    private static final class ClassFile {
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_PRIVATE = 0x0002;
+        private static final int ACC_SUPER = 0x0020;
+        private static final int ACC_INTERFACE = 0x0200;
+        private static final int ACC_ABSTRACT = 0x0400;
+
+        private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+        private final Map<String, Integer> constants = new HashMap<>();
+        private int constantCount = 1;
+
+        private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        private int fieldCount;
+        private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        private int methodCount;
+
+        private final String name;
+        private final String superName;
+        private final boolean isInterface;
+
+        private ClassFile(String name, String superName, boolean isInterface) {
+            this.name = name;
+            this.superName = superName;
+            this.isInterface = isInterface;
+        }
+
+        private void addField(String fieldName, String descriptor, String signature) {
+            writeMember(fields, ACC_PRIVATE, fieldName, descriptor, signature);
+            fieldCount++;
+        }
+
+        private void addMethod(String methodName, String descriptor) {
+            writeMember(methods, ACC_PUBLIC | ACC_ABSTRACT, methodName, descriptor, null);
+            methodCount++;
+        }
+
+        private void writeMember(ByteArrayOutputStream out, int access, String memberName, String descriptor,
+                                 String signature) {
+            DataOutputStream data = new DataOutputStream(out);
+            try {
+                data.writeShort(access);
+                data.writeShort(utf8(memberName));
+                data.writeShort(utf8(descriptor));
+                if (signature == null) {
+                    data.writeShort(0);
+                } else {
+                    data.writeShort(1);
+                    data.writeShort(utf8("Signature"));
+                    data.writeInt(2);
+                    data.writeShort(utf8(signature));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private int utf8(String value) throws IOException {
+            Integer index = constants.get("U" + value);
+            if (index == null) {
+                DataOutputStream data = new DataOutputStream(constantPool);
+                data.writeByte(1);
+                data.writeUTF(value);
+                index = constantCount++;
+                constants.put("U" + value, index);
+            }
+            return index;
+        }
+
+        private int classRef(String className) throws IOException {
+            int nameIndex = utf8(className);
+            Integer index = constants.get("C" + className);
+            if (index == null) {
+                DataOutputStream data = new DataOutputStream(constantPool);
+                data.writeByte(7);
+                data.writeShort(nameIndex);
+                index = constantCount++;
+                constants.put("C" + className, index);
+            }
+            return index;
+        }
+
+        private void write(Path packagePath) throws IOException {
+            int thisIndex = classRef(name);
+            int superIndex = classRef(superName);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(52);
+            data.writeShort(constantCount);
+            constantPool.writeTo(data);
+            data.writeShort(isInterface ? ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT : ACC_PUBLIC | ACC_SUPER);
+            data.writeShort(thisIndex);
+            data.writeShort(superIndex);
+            data.writeShort(0);
+            data.writeShort(fieldCount);
+            fields.writeTo(data);
+            data.writeShort(methodCount);
+            methods.writeTo(data);
+            data.writeShort(0);
+            Files.write(packagePath.resolve(name.substring(name.lastIndexOf('/') + 1) + ".class"), out.toByteArray());
+        }
+    }
+}
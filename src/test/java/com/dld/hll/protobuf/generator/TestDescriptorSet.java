@@ -0,0 +1,369 @@
+package com.dld.hll.protobuf.generator;
+
+import com.dld.hll.protobuf.generator.annotation.Comment;
+import com.dld.hll.protobuf.generator.service.vo.UserVO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 解码生成的描述符集合，与同时生成的proto文件逐个比较文件、导入、消息、字段（编号、标签、类型）、枚举及服务，
+ * Map字段需要为内嵌的 map_entry 消息（键为1、值为2）的重复字段，依赖的文件需要在前
+ * 再以自定义类型映射生成：缺少导入文件的描述符时生成失败，提供后合并到集合的最前面
+ * 在项目根目录下运行
+ *
+ * @author Chen Hui
+ */
+public class TestDescriptorSet {
+
+    private static final String WRAPPERS_FILE = "google/protobuf/wrappers.proto";
+    private static final String CUSTOM_FILE = "x/vo.proto";
+
+    /**
+     * FieldDescriptorProto 中的类型编号 -> proto标量类型名，消息及枚举为 null
+     */
+    private static final String[] SCALAR_NAMES = {null, "double", "float", "int64", "uint64", "int32", "fixed64",
+            "fixed32", "bool", "string", null, null, "bytes", "uint32", null, "sfixed32", "sfixed64", "sint32", "sint64"};
+
+    private static final Pattern WRAPPED_MAP_KEY = Pattern.compile("map<google\\.protobuf\\.(\\w+)Value");
+
+    public static void main(String[] args) throws Exception {
+        Path generatePath = Paths.get("target/descriptor-test/proto");
+        Path descriptorSetFile = Paths.get("target/descriptor-test/descriptor.pb");
+        deleteDirectory(generatePath);
+        newBuilder(generatePath, descriptorSetFile).build().executor();
+        List<String> fileNames = compare(generatePath, descriptorSetFile);
+        System.out.println("OK: " + fileNames + " match the proto files");
+
+        Path customPath = Paths.get("target/descriptor-test/custom");
+        Path customSetFile = Paths.get("target/descriptor-test/custom.pb");
+        try {
+            newBuilder(customPath, customSetFile).addTypeMapping(UserVO.class, "x.Vo", CUSTOM_FILE).build().executor();
+            throw new IllegalStateException("Missing descriptor of [" + CUSTOM_FILE + "] is not reported");
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalStateException || !String.valueOf(e.getMessage()).contains(CUSTOM_FILE)) {
+                throw e;
+            }
+        }
+
+        Path dependencyFile = Paths.get("target/descriptor-test/vo.pb");
+        Files.write(dependencyFile, buildCustomDescriptorSet());
+        deleteDirectory(customPath);
+        newBuilder(customPath, customSetFile).addTypeMapping(UserVO.class, "x.Vo", CUSTOM_FILE)
+                .setDescriptorSetDependencies(dependencyFile.toString()).build().executor();
+        List<String> customFileNames = compare(customPath, customSetFile);
+        if (!customFileNames.get(0).equals(CUSTOM_FILE)) {
+            throw new RuntimeException("Supplied file must come first: " + customFileNames);
+        }
+        System.out.println("OK: " + customFileNames + " match the proto files with a custom type mapping");
+    }
+
+    private static ProtoExecutor.Builder newBuilder(Path generatePath, Path descriptorSetFile) {
+        return ProtoExecutor.newBuilder()
+                .setProjectName("protobuf-generator")
+                .setProjectPath(System.getProperty("user.dir"))
+                .setProjectBasePath("src/test/java")
+                .setGeneratePath(generatePath.toString())
+                .setComment(Comment.class, "value")
+                .setOrdering(ProtoOrdering.DECLARATION)
+                .setDescriptorSetFile(descriptorSetFile.toString());
+    }
+
+    /**
+     * @return 描述符集合中的文件名
+     */
+    private static List<String> compare(Path generatePath, Path descriptorSetFile) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        for (byte[] fileBytes : Message.parse(Files.readAllBytes(descriptorSetFile)).getBytesList(1)) {
+            Message file = Message.parse(fileBytes);
+            String fileName = file.getString(1);
+            if (!fileNames.containsAll(file.getStringList(3))) {
+                throw new RuntimeException("Dependencies of [" + fileName + "] must come first: " + fileNames);
+            }
+            fileNames.add(fileName);
+            if (fileName.equals(WRAPPERS_FILE)) {
+                checkWrappers(file);
+            } else if (!fileName.equals(CUSTOM_FILE)) {
+                List<String> expected = readProtoFile(generatePath.resolve(fileName));
+                List<String> actual = describe(file);
+                if (!expected.equals(actual)) {
+                    throw new RuntimeException("Descriptor of [" + fileName + "] differs from the proto file:\n" +
+                            expected + "\nvs\n" + actual);
+                }
+            }
+        }
+
+        String[] protoFiles = generatePath.toFile().list((dir, name) -> name.endsWith(".proto"));
+        if (protoFiles == null || !fileNames.containsAll(Arrays.asList(protoFiles)) ||
+                fileNames.size() != protoFiles.length + (fileNames.contains(CUSTOM_FILE) ? 2 : 1)) {
+            throw new RuntimeException("Files differ: " + Arrays.toString(protoFiles) + " vs " + fileNames);
+        }
+        return fileNames;
+    }
+
+    private static void checkWrappers(Message file) {
+        if (!"google.protobuf".equals(file.getString(2)) || file.getBytesList(4).size() != 9) {
+            throw new RuntimeException("Invalid wrappers file");
+        }
+        for (byte[] messageBytes : file.getBytesList(4)) {
+            List<byte[]> fields = Message.parse(messageBytes).getBytesList(2);
+            if (fields.size() != 1 || !"value".equals(Message.parse(fields.get(0)).getString(1))) {
+                throw new RuntimeException("Invalid wrapper message");
+            }
+        }
+    }
+
+    /**
+     * 按proto文件的行描述文件结构：import、message、field、enum、value、service、rpc
+     * 描述符中每个文件都导入 wrappers.proto（proto文件中Common不导入），不参与比较
+     */
+    private static List<String> describe(Message file) {
+        List<String> lines = new ArrayList<>();
+        for (String dependency : file.getStringList(3)) {
+            if (!dependency.equals(WRAPPERS_FILE)) {
+                lines.add("import " + dependency);
+            }
+        }
+        if (!file.getStringList(3).contains(WRAPPERS_FILE)) {
+            lines.add("missing import " + WRAPPERS_FILE);
+        }
+
+        for (byte[] messageBytes : file.getBytesList(4)) {
+            Message message = Message.parse(messageBytes);
+            Map<String, Message> mapEntries = new HashMap<>();
+            for (byte[] nestedBytes : message.getBytesList(3)) {
+                Message nestedType = Message.parse(nestedBytes);
+                List<byte[]> options = nestedType.getBytesList(7);
+                if (options.size() != 1 || Message.parse(options.get(0)).getLong(7) != 1) {
+                    throw new RuntimeException("Nested type [" + nestedType.getString(1) + "] is not a map entry");
+                }
+                mapEntries.put("." + message.getString(1) + "." + nestedType.getString(1), nestedType);
+            }
+
+            lines.add("message " + message.getString(1));
+            for (byte[] fieldBytes : message.getBytesList(2)) {
+                Message field = Message.parse(fieldBytes);
+                Message mapEntry = mapEntries.remove(field.getString(6));
+                String type;
+                if (mapEntry != null) {
+                    List<byte[]> entryFields = mapEntry.getBytesList(2);
+                    Message key = Message.parse(entryFields.get(0));
+                    Message value = Message.parse(entryFields.get(1));
+                    if (entryFields.size() != 2 || !"key".equals(key.getString(1)) || key.getLong(3) != 1 ||
+                            !"value".equals(value.getString(1)) || value.getLong(3) != 2 || field.getLong(4) != 3) {
+                        throw new RuntimeException("Invalid map field [" + field.getString(1) + "]");
+                    }
+                    type = "map<" + getTypeName(key) + ", " + getTypeName(value) + ">";
+                } else {
+                    type = (field.getLong(4) == 3 ? "repeated " : "") + getTypeName(field);
+                }
+                lines.add("field " + type + " " + field.getString(1) + " = " + field.getLong(3));
+            }
+            if (!mapEntries.isEmpty()) {
+                throw new RuntimeException("Unused map entries " + mapEntries.keySet());
+            }
+        }
+
+        for (byte[] enumBytes : file.getBytesList(5)) {
+            Message enumDesc = Message.parse(enumBytes);
+            lines.add("enum " + enumDesc.getString(1));
+            for (byte[] valueBytes : enumDesc.getBytesList(2)) {
+                Message value = Message.parse(valueBytes);
+                lines.add("value " + value.getString(1) + " = " + value.getLong(2));
+            }
+        }
+
+        for (byte[] serviceBytes : file.getBytesList(6)) {
+            Message service = Message.parse(serviceBytes);
+            lines.add("service " + service.getString(1));
+            for (byte[] methodBytes : service.getBytesList(2)) {
+                Message method = Message.parse(methodBytes);
+                lines.add("rpc " + method.getString(1) + " " + method.getString(2).substring(1) + " " +
+                        method.getString(3).substring(1));
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static String getTypeName(Message field) {
+        int type = (int) field.getLong(5);
+        return type == 0 || SCALAR_NAMES[type] == null ? field.getString(6).substring(1) : SCALAR_NAMES[type];
+    }
+
+    /**
+     * 与 {@link #describe(Message)} 相同的描述，只识别生成器输出的格式
+     * Map的键为包装类型时描述符中为其标量类型，按描述符的写法转换
+     */
+    private static List<String> readProtoFile(Path protoFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String block = null;
+        for (String line : Files.readAllLines(protoFile, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//") || line.startsWith("syntax") || line.startsWith("option") ||
+                    line.equals("}")) {
+                continue;
+            }
+            if (line.startsWith("import ")) {
+                String importFile = line.substring("import \"".length(), line.length() - "\";".length());
+                if (!importFile.equals(WRAPPERS_FILE)) {
+                    lines.add("import " + importFile);
+                }
+            } else if (line.endsWith("{")) {
+                block = line.substring(0, line.indexOf(' '));
+                lines.add(line.substring(0, line.length() - 1).trim());
+            } else if (line.startsWith("rpc ")) {
+                lines.add(line.replaceAll("rpc (\\w+) \\((\\S+)\\) returns \\((\\S+)\\);", "rpc $1 $2 $3"));
+            } else {
+                Matcher matcher = WRAPPED_MAP_KEY.matcher(line);
+                if (matcher.lookingAt()) {
+                    line = "map<" + matcher.group(1).toLowerCase() + line.substring(matcher.end());
+                }
+                lines.add(("enum".equals(block) ? "value " : "field ") + line.substring(0, line.length() - 1));
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * 自定义映射导入的文件的描述符集合：x/vo.proto 中定义消息 x.Vo
+     */
+    private static byte[] buildCustomDescriptorSet() {
+        byte[] message = new Writer().writeString(1, "Vo").toByteArray();
+        byte[] file = new Writer().writeString(1, CUSTOM_FILE).writeString(2, "x").writeBytes(4, message)
+                .writeString(12, "proto3").toByteArray();
+        return new Writer().writeBytes(1, file).toByteArray();
+    }
+
+    private static void deleteDirectory(Path path) {
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new RuntimeException("File could not be deleted -> " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 最小的 protobuf 解码：字段号 -> 按出现顺序的值（varint 为 Long，长度分隔为 byte[]）
+     */
+    private static final class Message {
+
+        private final Map<Integer, List<Object>> fields = new HashMap<>();
+
+        private static Message parse(byte[] bytes) {
+            Message message = new Message();
+            int[] position = {0};
+            while (position[0] < bytes.length) {
+                long tag = readVarint(bytes, position);
+                Object value;
+                switch ((int) (tag & 0x7)) {
+                    case 0:
+                        value = readVarint(bytes, position);
+                        break;
+                    case 2:
+                        int length = (int) readVarint(bytes, position);
+                        if (length < 0 || position[0] + length > bytes.length) {
+                            throw new RuntimeException("Truncated message");
+                        }
+                        value = Arrays.copyOfRange(bytes, position[0], position[0] + length);
+                        position[0] += length;
+                        break;
+                    default:
+                        throw new RuntimeException("Unexpected wire type of tag [" + tag + "]");
+                }
+                message.fields.computeIfAbsent((int) (tag >>> 3), k -> new ArrayList<>()).add(value);
+            }
+            return message;
+        }
+
+        private static long readVarint(byte[] bytes, int[] position) {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position[0] >= bytes.length) {
+                    throw new RuntimeException("Truncated varint");
+                }
+                byte b = bytes[position[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Malformed varint");
+        }
+
+        private List<byte[]> getBytesList(int field) {
+            List<byte[]> values = new ArrayList<>();
+            for (Object value : fields.getOrDefault(field, Collections.emptyList())) {
+                values.add((byte[]) value);
+            }
+            return values;
+        }
+
+        private List<String> getStringList(int field) {
+            List<String> values = new ArrayList<>();
+            for (byte[] value : getBytesList(field)) {
+                values.add(new String(value, StandardCharsets.UTF_8));
+            }
+            return values;
+        }
+
+        /**
+         * @return 没有时返回 null
+         */
+        private String getString(int field) {
+            List<String> values = getStringList(field);
+            return values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        /**
+         * @return 没有时返回 0
+         */
+        private long getLong(int field) {
+            List<Object> values = fields.getOrDefault(field, Collections.emptyList());
+            return values.isEmpty() ? 0 : (Long) values.get(values.size() - 1);
+        }
+    }
+
+    /**
+     * 最小的 protobuf 编码，只用于构造外部描述符集合
+     */
+    private static final class Writer {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private Writer writeString(int field, String value) {
+            return writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private Writer writeBytes(int field, byte[] bytes) {
+            writeVarint(field << 3 | 2);
+            writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
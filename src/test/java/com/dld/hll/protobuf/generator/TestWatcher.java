@@ -0,0 +1,153 @@
+package com.dld.hll.protobuf.generator;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 监听模式下类型归属的变化：AService、BService 都引用 X 时 X 在Common中，
+ * 只修改 BService 使用的 BReq 使其不再引用 X 后，X 归 AService 所有，需要重新生成没有引用变化类的 AService；
+ * 再改回后 X 回到Common，AService 中不能重复定义
+ * 每一步检查 X 只在一个文件中定义，且是期望的文件
+ * 在项目根目录下运行（需要 JDK 中的编译器）
+ *
+ * @author Chen Hui
+ */
+public class TestWatcher {
+
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        Path projectPath = Paths.get("target/watch-test/project").toAbsolutePath();
+        Path sourcePath = projectPath.resolve("src/main/java/w");
+        Path classesPath = projectPath.resolve("target/classes");
+        Path generatePath = projectPath.resolve("proto");
+        deleteDirectory(sourcePath);
+        deleteDirectory(classesPath.resolve("w"));
+        deleteDirectory(generatePath);
+        Files.createDirectories(sourcePath);
+        Files.createDirectories(classesPath);
+
+        writeClass(sourcePath, "X", "public class X { private String x; }");
+        writeClass(sourcePath, "AReq", "public class AReq { private X x; }");
+        writeClass(sourcePath, "BReq", "public class BReq { private X x; }");
+        writeClass(sourcePath, "AService", "public interface AService { AReq query(AReq req); }");
+        writeClass(sourcePath, "BService", "public interface BService { BReq query(BReq req); }");
+        compile(classesPath, sourcePath.resolve("X.java"), sourcePath.resolve("AReq.java"),
+                sourcePath.resolve("BReq.java"), sourcePath.resolve("AService.java"),
+                sourcePath.resolve("BService.java"));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread watcher = new Thread(() -> {
+            try {
+                ProtoExecutor.newBuilder()
+                        .setProjectName("watch")
+                        .setProjectPath(projectPath.toString())
+                        .setClassesPath("target/classes")
+                        .setGeneratePath(generatePath.toString())
+                        .setOrdering(ProtoOrdering.DECLARATION)
+                        .setWatchDebounceMillis(200)
+                        .build().watch();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        try {
+            awaitOwner(generatePath, "WatchCommon.proto", failure);
+            System.out.println("OK: X is shared");
+
+            // BReq 不再引用 X，AService 没有引用变化的类
+            writeClass(sourcePath, "BReq", "public class BReq { private String name; }");
+            compile(classesPath, sourcePath.resolve("BReq.java"));
+            awaitOwner(generatePath, "AService.proto", failure);
+            System.out.println("OK: X moved to AService");
+
+            // BReq 重新引用 X
+            writeClass(sourcePath, "BReq", "public class BReq { private X x; }");
+            compile(classesPath, sourcePath.resolve("BReq.java"));
+            awaitOwner(generatePath, "WatchCommon.proto", failure);
+            System.out.println("OK: X moved back to Common");
+        } finally {
+            watcher.interrupt();
+        }
+    }
+
+    /**
+     * 等待 X 只在指定文件中定义
+     */
+    private static void awaitOwner(Path generatePath, String expectedFile, AtomicReference<Throwable> failure)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        List<String> owners;
+        do {
+            if (failure.get() != null) {
+                throw new RuntimeException("Watcher stopped", failure.get());
+            }
+            Thread.sleep(100);
+            owners = findOwners(generatePath);
+            if (owners.size() == 1 && owners.get(0).equals(expectedFile)) {
+                return;
+            }
+        } while (System.currentTimeMillis() < deadline);
+        throw new RuntimeException("Message [X] is defined in " + owners + ", expected only in [" + expectedFile + "]");
+    }
+
+    private static List<String> findOwners(Path generatePath) throws IOException {
+        List<String> owners = new ArrayList<>();
+        String[] fileNames = generatePath.toFile().list((dir, name) -> name.endsWith(".proto"));
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                String content = new String(Files.readAllBytes(generatePath.resolve(fileName)),
+                        StandardCharsets.UTF_8);
+                if (content.contains("message X {")) {
+                    owners.add(fileName);
+                }
+            }
+        }
+        return owners;
+    }
+
+    private static void writeClass(Path sourcePath, String className, String body) throws IOException {
+        Files.write(sourcePath.resolve(className + ".java"), ("package w;\n\n" + body + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void compile(Path classesPath, Path... sourceFiles) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No system Java compiler, run with a JDK");
+        }
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(classesPath.toString());
+        arguments.add("-cp");
+        arguments.add(classesPath.toString());
+        for (Path sourceFile : sourceFiles) {
+            arguments.add(sourceFile.toString());
+        }
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new RuntimeException("Compilation failed: " + arguments);
+        }
+    }
+
+    private static void deleteDirectory(Path path) {
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new RuntimeException("File could not be deleted -> " + file);
+                }
+            }
+        }
+    }
+}